@@ -0,0 +1,51 @@
+import bench.BenchTree;
+
+import java.util.function.IntConsumer;
+
+public final class TreeAdapter implements BenchTree { // мост от бенчмарков к SearchTree и деревьям на массивах
+
+    private final SearchTree tree;
+
+    private TreeAdapter(SearchTree tree) {
+        this.tree = tree;
+    }
+
+    public static BenchTree create(String type) { // у каждого дерева свой класс адаптера - вызовы в замере мономорфные
+        switch (type) {
+            case "RBT": return new TreeAdapter(new RedBlackTree());
+            case "AVL": return new TreeAdapter(new AVLTree());
+            case "ARRAY_RBT": return new ArrayRbt();
+            case "ARRAY_AVL": return new ArrayAvl();
+            default: throw new IllegalArgumentException("неизвестное дерево: " + type);
+        }
+    }
+
+    public void insert(int key) {tree.insert(key);}
+    public void delete(int key) {tree.delete(key);}
+    public boolean contains(int key) {return tree.contains(key);}
+    public void forEachInRange(int lo, int hi, IntConsumer action) {tree.forEachInRange(lo, hi, action);}
+    public int countInRange(int lo, int hi) {return tree.countInRange(lo, hi);}
+    public int getNodeCount() {return tree.getNodeCount();}
+
+    private static final class ArrayRbt implements BenchTree { // ArrayRedBlackTree не SearchTree - только нужные бенчмаркам операции
+        private final ArrayRedBlackTree tree = new ArrayRedBlackTree();
+
+        public void insert(int key) {tree.insert(key);}
+        public void delete(int key) {tree.delete(key);}
+        public boolean contains(int key) {return tree.contains(key);}
+        public void forEachInRange(int lo, int hi, IntConsumer action) {tree.forEachInRange(lo, hi, action);}
+        public int countInRange(int lo, int hi) {return tree.countInRange(lo, hi);}
+        public int getNodeCount() {return tree.getNodeCount();}
+    }
+
+    private static final class ArrayAvl implements BenchTree {
+        private final ArrayAVLTree tree = new ArrayAVLTree();
+
+        public void insert(int key) {tree.insert(key);}
+        public void delete(int key) {tree.delete(key);}
+        public boolean contains(int key) {return tree.contains(key);}
+        public void forEachInRange(int lo, int hi, IntConsumer action) {tree.forEachInRange(lo, hi, action);}
+        public int countInRange(int lo, int hi) {return tree.countInRange(lo, hi);}
+        public int getNodeCount() {return tree.getNodeCount();}
+    }
+}
@@ -0,0 +1,27 @@
+package bench;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.function.IntConsumer;
+
+public interface BenchTree { // то, что замеряют бенчмарки; реализация - TreeAdapter рядом с деревьями в пакете по умолчанию
+
+    void insert(int key);
+    void delete(int key);
+    boolean contains(int key);
+    void forEachInRange(int lo, int hi, IntConsumer action);
+    int countInRange(int lo, int hi);
+    int getNodeCount();
+
+    static BenchTree create(String type) { // "RBT", "AVL", "ARRAY_RBT" или "ARRAY_AVL"
+        // JMH не принимает бенчмарки в пакете по умолчанию, а из именованного пакета классы оттуда не видны -
+        // поэтому адаптер ищется по имени один раз при подготовке, замеряемые вызовы обычные
+        try {
+            return (BenchTree) Class.forName("TreeAdapter").getMethod("create", String.class).invoke(null, type);
+        } catch (InvocationTargetException e) { // неизвестный тип - исключение самого create
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("не удалось создать дерево " + type, e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("не удалось создать дерево " + type, e);
+        }
+    }
+}
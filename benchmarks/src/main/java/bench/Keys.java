@@ -0,0 +1,55 @@
+package bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+final class Keys { // наборы ключей для бенчмарков, с фиксированным seed - одинаковые для RBT и AVL
+
+    private Keys() {}
+
+    static int[] generate(String distribution, int n, long seed) {
+        Random rnd = new Random(seed);
+        int[] keys = new int[n];
+        switch (distribution) {
+            case "uniform": // случайные по всему int
+                for (int i = 0; i < n; i++) keys[i] = rnd.nextInt();
+                break;
+            case "sequential": // по возрастанию - худший случай для несбалансированного дерева, много поворотов
+                for (int i = 0; i < n; i++) keys[i] = i;
+                break;
+            case "reverse":
+                for (int i = 0; i < n; i++) keys[i] = n - i;
+                break;
+            default:
+                throw new IllegalArgumentException("неизвестное распределение: " + distribution);
+        }
+        return keys;
+    }
+
+    static int[] probes(int[] present, int count, long seed) { // запросы поиска: половина попадает, половина мимо
+        Random rnd = new Random(seed);
+        int[] probes = new int[count];
+        for (int i = 0; i < count; i++) {
+            probes[i] = (i & 1) == 0 ? present[rnd.nextInt(present.length)] : rnd.nextInt();
+        }
+        return probes;
+    }
+
+    static int[] shuffled(int[] keys, long seed) {
+        int[] copy = keys.clone();
+        Random rnd = new Random(seed);
+        for (int i = copy.length - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int t = copy[i];
+            copy[i] = copy[j];
+            copy[j] = t;
+        }
+        return copy;
+    }
+
+    static int[] sorted(int[] keys) {
+        int[] copy = keys.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+}
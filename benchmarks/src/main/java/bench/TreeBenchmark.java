@@ -0,0 +1,194 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+// каждая комбинация параметров - отдельная JVM (@Fork), поэтому RBT и AVL не влияют друг на друга через JIT и кучу
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class TreeBenchmark {
+
+    private static final int PROBES = 1 << 16; // поток запросов, степень двойки - индекс по маске
+
+    @State(Scope.Thread)
+    public static class Filled { // дерево из n ключей, построенное обычными вставками
+        @Param({"RBT", "AVL", "ARRAY_RBT", "ARRAY_AVL"})
+        public String tree;
+        @Param({"1000", "100000", "1000000"})
+        public int n;
+        @Param({"uniform", "sequential"})
+        public String keys;
+
+        BenchTree t;
+        int[] present;
+        int[] probes;
+        int next;
+
+        @Setup(Level.Trial)
+        public void fill() {
+            present = Keys.generate(keys, n, 42);
+            t = BenchTree.create(tree);
+            for (int k : present) t.insert(k);
+            probes = Keys.probes(present, PROBES, 7);
+        }
+
+        int nextProbe() {
+            int k = probes[next];
+            next = (next + 1) & (PROBES - 1);
+            return k;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Mixed extends Filled { // поток операций с заданной долей чтений
+        @Param({"50", "90", "99"})
+        public int readPercent;
+
+        boolean[] write;
+        boolean insertNext = true;
+
+        @Setup(Level.Trial)
+        public void ops() {
+            java.util.Random rnd = new java.util.Random(11);
+            write = new boolean[PROBES];
+            for (int i = 0; i < PROBES; i++) write[i] = rnd.nextInt(100) >= readPercent;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Range extends Filled { // диапазоны [lo, hi] ровно по width ключей дерева
+        @Param({"16", "1024"})
+        public int width;
+
+        int[] los, his;
+        final Sum sum = new Sum();
+
+        @Setup(Level.Trial)
+        public void ranges() {
+            int[] sorted = Keys.sorted(present);
+            java.util.Random rnd = new java.util.Random(13);
+            los = new int[PROBES];
+            his = new int[PROBES];
+            for (int i = 0; i < PROBES; i++) {
+                int from = rnd.nextInt(Math.max(1, sorted.length - width + 1));
+                los[i] = sorted[from];
+                his[i] = sorted[Math.min(sorted.length - 1, from + width - 1)];
+            }
+        }
+    }
+
+    static final class Sum implements IntConsumer { // результат обхода возвращается из бенчмарка - JIT не выбросит обход
+        long s;
+
+        public void accept(int key) {
+            s += key;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Empty { // для одноразовых замеров: построение и разбор всего дерева
+        @Param({"RBT", "AVL", "ARRAY_RBT", "ARRAY_AVL"})
+        public String tree;
+        @Param({"1000", "100000", "1000000"})
+        public int n;
+        @Param({"uniform", "sequential"})
+        public String keys;
+
+        int[] insertOrder;
+        int[] deleteOrder;
+        BenchTree t;
+
+        @Setup(Level.Trial)
+        public void keys() {
+            insertOrder = Keys.generate(keys, n, 42);
+            deleteOrder = Keys.shuffled(insertOrder, 5);
+        }
+
+        @Setup(Level.Iteration)
+        public void fresh() { // для drain - заполненное дерево, для build - пустое (build его перезапишет)
+            t = BenchTree.create(tree);
+            for (int k : insertOrder) t.insert(k);
+        }
+    }
+
+    // ---------- одиночные операции на дереве из n ключей ----------
+
+    @Benchmark
+    public boolean contains(Filled s) {
+        return s.t.contains(s.nextProbe());
+    }
+
+    @Benchmark
+    public int insertDelete(Filled s) { // вставка и удаление того же ключа - размер дерева не меняется
+        int k = s.nextProbe();
+        s.t.insert(k);
+        s.t.delete(k);
+        return k;
+    }
+
+    @Benchmark
+    public boolean mixed(Mixed s) {
+        int i = s.next;
+        int k = s.nextProbe();
+        if (!s.write[i]) return s.t.contains(k);
+        if (s.insertNext) s.t.insert(k); // запись: вставки и удаления по очереди, как в TreeCompare
+        else s.t.delete(k);
+        s.insertNext = !s.insertNext;
+        return s.insertNext;
+    }
+
+    @Benchmark
+    public long rangeScan(Range s) {
+        int i = s.next;
+        s.nextProbe();
+        s.sum.s = 0;
+        s.t.forEachInRange(s.los[i], s.his[i], s.sum);
+        return s.sum.s;
+    }
+
+    @Benchmark
+    public int rangeCount(Range s) {
+        int i = s.next;
+        s.nextProbe();
+        return s.t.countInRange(s.los[i], s.his[i]);
+    }
+
+    // ---------- целиком: n вставок в пустое дерево и n удалений из полного ----------
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 10)
+    @Measurement(iterations = 10)
+    public BenchTree build(Empty s) {
+        BenchTree t = BenchTree.create(s.tree);
+        for (int k : s.insertOrder) t.insert(k);
+        return t;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 10)
+    @Measurement(iterations = 10)
+    public int drain(Empty s) {
+        for (int k : s.deleteOrder) s.t.delete(k);
+        return s.t.getNodeCount();
+    }
+}
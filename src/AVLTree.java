@@ -1,8 +1,14 @@
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.OptionalInt;
+import java.util.function.IntConsumer;
 
-public class AVLTree {
-    private static class Node {
+public class AVLTree implements SearchTree, TreeView<AVLTree.Node> {
+    static class Node { // виден снаружи только как тип TreeView, поля трогает лишь само дерево
         int key;
         Node left, right;
         int height; // высота узла
@@ -14,14 +20,120 @@ public class AVLTree {
         }
     }
 
+    static final class AugNode extends Node { // узел с дополнениями - только у дерева с orderStatistics или снимками, простое их не несет
+        int size; // кол-во узлов в поддереве (только при orderStatistics)
+        int version; // эпоха дерева, в которой узел создан; узлы старых эпох общие со снимками и не меняются
+
+        AugNode(int k) {
+            super(k);
+            size = 1;
+        }
+    }
+
+    private final boolean orderStatistics; // поддерживать размеры поддеревьев для rank/select
+    private final boolean snapshots; // разрешен snapshot() - узлы помнят свою эпоху
     private Node root; // корень
+    private Node[] path = new Node[64]; // переиспользуемый буфер пути для insert/delete
+    private Node removedMin; // результат removeMin для join2
+    private int epoch = 0; // текущая эпоха: snapshot() увеличивает ее, и все существующие узлы становятся неизменяемыми
+    private boolean readOnly = false; // дерево - снимок, запись запрещена
     private int rotations = 0; // повороты
     private int nodeCount = 0; // кол-во узлов
+    private int singleRotations = 0; // статистика поворотов по видам
+    private int doubleRotations = 0;
+    private int insertRotations = 0;
+    private int deleteRotations = 0;
+    private long modCount = 0; // число изменений: холст по нему понимает, что прошла ровно одна операция
+    private int changedDepth = 0; // глубина поддерева, которое поменяла последняя операция (0 - все дерево)
+    private int changedKey; // ключ последней операции - выше changedDepth путь к поддереву идет по нему
+    private AVLTree origin = this; // у снимка - дерево, с которого он снят
+
+    public AVLTree() {
+        this(false, false);
+    }
+
+    public AVLTree(boolean orderStatistics) { // true - узлы хранят размер поддерева, доступны rank/select/percentile
+        this(orderStatistics, false);
+    }
+
+    public AVLTree(boolean orderStatistics, boolean snapshots) { // snapshots - доступен snapshot(), узлы хранят эпоху
+        this.orderStatistics = orderStatistics;
+        this.snapshots = snapshots;
+    }
+
+    public boolean hasOrderStatistics() {return orderStatistics;}
+    public boolean hasSnapshots() {return snapshots;}
+
+    public AVLTree snapshot() { // неизменяемая версия дерева за O(1): узлы общие, дальнейшие записи копируют только свой путь
+        if (readOnly) return this; // снимок и так не меняется
+        if (!snapshots) throw new IllegalStateException("дерево создано без snapshots");
+        AVLTree s = new AVLTree(orderStatistics, true);
+        s.root = root;
+        s.nodeCount = nodeCount;
+        s.rotations = rotations;
+        s.singleRotations = singleRotations;
+        s.doubleRotations = doubleRotations;
+        s.insertRotations = insertRotations;
+        s.deleteRotations = deleteRotations;
+        s.modCount = modCount;
+        s.changedDepth = changedDepth;
+        s.changedKey = changedKey;
+        s.origin = origin;
+        s.path = null; // снимку буфер пути не нужен
+        s.readOnly = true;
+        epoch++; // с этого момента все текущие узлы принадлежат и снимку
+        return s;
+    }
+
+    public boolean isReadOnly() {return readOnly;}
+
+    private void checkWritable() {
+        if (readOnly) throw new UnsupportedOperationException("снимок AVLTree только для чтения");
+    }
+
+    private Node newNode(int key) {
+        if (!orderStatistics && !snapshots) return new Node(key);
+        AugNode n = new AugNode(key);
+        n.version = epoch;
+        return n;
+    }
+
+    private Node mutable(Node n) { // узел текущей эпохи меняем на месте, общий со снимком - копируем
+        if (!snapshots || ((AugNode) n).version == epoch) return n;
+        AugNode c = (AugNode) newNode(n.key);
+        c.left = n.left;
+        c.right = n.right;
+        c.height = n.height;
+        c.size = ((AugNode) n).size;
+        return c;
+    }
+
+    private void copyPath(int d) { // делает изменяемыми path[0..d) и перевешивает копии на их родителей
+        if (!snapshots) return; // без снимков копий не бывает
+        for (int i = 0; i < d; i++) {
+            Node n = path[i];
+            if (((AugNode) n).version == epoch) continue; // снимков еще не брали - всегда сюда
+            Node c = mutable(n);
+            path[i] = c;
+            if (i == 0) root = c;
+            else if (path[i - 1].left == n) path[i - 1].left = c;
+            else path[i - 1].right = c;
+        }
+    }
 
     public int getRotations(){return rotations;}
-    public void resetRotations() {this.rotations = 0;}
+    public void resetRotations() { // только счетчики - разрешено и снимку
+        this.rotations = 0;
+        this.singleRotations = this.doubleRotations = 0;
+        this.insertRotations = this.deleteRotations = 0;
+    }
     public int getNodeCount() {return nodeCount;}
 
+    public TreeStats getStats() { // высота хранится в корне, поэтому все поля доступны за O(1)
+        return new TreeStats(getHeight(), 0, nodeCount,
+                singleRotations, doubleRotations, insertRotations, deleteRotations);
+    }
+
     public boolean contains(int key) {
         return search(root, key) != null;
     }
@@ -34,67 +146,267 @@ public class AVLTree {
         return null;
     }
 
-    public void insert(int key) { // рекурсивная вставка
-        root = insertRec(root, key);
+    public void forEach(IntConsumer action) { // все ключи по возрастанию
+        forEachInRange(Integer.MIN_VALUE, Integer.MAX_VALUE, action);
     }
 
-    private Node insertRec(Node node, int key) {
-        if (node == null) { // нашли место для нового узла
-            nodeCount++;
-            return new Node(key); // создаем новый узел
+    public void forEachInRange(int lo, int hi, IntConsumer action) { // ключи из [lo, hi] по возрастанию за O(log n + k)
+        if (root == null || lo > hi) return;
+        Node[] stack = new Node[root.height]; // один стек на весь обход (глубже высоты не бывает), не поле - чтение не меняет дерево
+        int sp = 0;
+        for (Node n = root; n != null; ) { // спуск к первому ключу >= lo, на стеке - узлы, которые еще предстоит выдать
+            if (n.key < lo) {
+                n = n.right;
+            } else {
+                stack[sp++] = n;
+                n = n.left;
+            }
         }
+        while (sp > 0) {
+            Node n = stack[--sp];
+            if (n.key > hi) return; // дальше по порядку только большие ключи
+            action.accept(n.key);
+            for (n = n.right; n != null; n = n.left) stack[sp++] = n; // следующий - самый левый в правом поддереве
+        }
+    }
 
-        if (key < node.key) { // рекурсивный поиск места для вставки
-            node.left = insertRec(node.left, key); // ключ меньше идем влево, иначе вправо
-        } else {
-            node.right = insertRec(node.right, key);
+    public int countInRange(int lo, int hi) { // O(log n) с orderStatistics, иначе O(log n + k)
+        if (root == null || lo > hi) return 0;
+        if (orderStatistics) return countBelow(hi, true) - countBelow(lo, false);
+        Node[] stack = new Node[root.height];
+        int sp = 0, count = 0;
+        for (Node n = root; n != null; ) {
+            if (n.key < lo) {
+                n = n.right;
+            } else {
+                stack[sp++] = n;
+                n = n.left;
+            }
+        }
+        while (sp > 0) {
+            Node n = stack[--sp];
+            if (n.key > hi) break;
+            count++;
+            for (n = n.right; n != null; n = n.left) stack[sp++] = n;
         }
+        return count;
+    }
 
-        updateHeight(node); // обновляем высоту текущего узла
-        return balance(node); // баланс+возврат результата
+    public int traceRange(int lo, int hi, IntConsumer action, int maxSteps) { // forEachInRange, но не дольше maxSteps шагов
+        if (root == null || lo > hi) return 0;
+        Node[] stack = new Node[Math.max(1, root.height)]; // на разорванном дереве может не хватить - ArrayIndexOutOfBounds, чтение повторят
+        int sp = 0, steps = 0, count = 0;
+        for (Node n = root; n != null; ) {
+            if (++steps > maxSteps) return -1;
+            if (n.key < lo) {
+                n = n.right;
+            } else {
+                stack[sp++] = n;
+                n = n.left;
+            }
+        }
+        while (sp > 0) {
+            Node n = stack[--sp];
+            if (n.key > hi) break;
+            if (action != null) action.accept(n.key);
+            count++;
+            for (n = n.right; n != null; n = n.left) {
+                if (++steps > maxSteps) return -1;
+                stack[sp++] = n;
+            }
+            if (++steps > maxSteps) return -1;
+        }
+        return count;
     }
 
-    public void delete(int key) {
-        root = deleteRec(root, key); // рекурсивн удаление
-    }
-
-    private Node deleteRec(Node node, int key) {
-        if (node == null) return null;
-
-        Node result; //  переменная для хранения результата, который будем балансировать
-
-        if (key < node.key) { // ключ меньше - идем влево
-            node.left = deleteRec(node.left, key);
-            result = node; // сохраняем текущий узел как результат (после удаления в левом поддереве)
-        } else if (key > node.key) { // ключ больше - идем вправо
-            node.right = deleteRec(node.right, key);
-            result = node;
-        } else { // нашли узел для удаления (key == node.key)
-            if (node.left == null) { // СЛ1 - у узла нет левого потомка (0 или 1 потомок)
-                nodeCount--;
-                result = node.right; // возвращаем правого потомка
-            } else if (node.right == null) { // СЛ2 - у узла нет правого потомка
-                nodeCount--;
-                result = node.left; // левого
-            } else { // СЛ 3 - у узла есть оба потомка
-                Node preemnik = minValue(node.right); // минимальный узел в правом поддереве
-                node.key = preemnik.key; // заменяем ключ текущего узла на ключ преемника
-                node.right = deleteRec(node.right, preemnik.key); // рекурсивно удаляем преемника из правого поддерева
-                result = node;
+    public int traceCount(int lo, int hi, int maxSteps) {
+        if (lo > hi) return 0;
+        if (!orderStatistics) return traceRange(lo, hi, null, maxSteps);
+        int above = countBelow(hi, true, maxSteps), below = countBelow(lo, false, maxSteps);
+        return above < 0 || below < 0 ? -1 : above - below;
+    }
+
+    public int rank(int key) { // кол-во ключей строго меньше key
+        checkOrderStatistics();
+        return countBelow(key, false);
+    }
+
+    public int select(int index) { // ключ с порядковым номером index (с 0) по возрастанию
+        checkOrderStatistics();
+        if (index < 0 || index >= nodeCount) throw new IndexOutOfBoundsException("index " + index + ", size " + nodeCount);
+        Node n = root;
+        while (true) {
+            int leftSize = size(n.left);
+            if (index < leftSize) {
+                n = n.left;
+            } else if (index == leftSize) {
+                return n.key;
+            } else {
+                index -= leftSize + 1;
+                n = n.right;
             }
         }
+    }
+
+    public int percentile(double p) { // p-й процентиль (0..100) методом ближайшего ранга
+        checkOrderStatistics();
+        if (nodeCount == 0) throw new NoSuchElementException("дерево пустое");
+        if (p < 0 || p > 100) throw new IllegalArgumentException("p должен быть в [0, 100]: " + p);
+        int index = (int) Math.ceil(p / 100.0 * nodeCount) - 1;
+        return select(Math.max(0, index));
+    }
+
+    private int countBelow(int key, boolean inclusive) { // кол-во ключей < key (или <= key)
+        return countBelow(key, inclusive, Integer.MAX_VALUE);
+    }
 
-        if (result != null) { // также балансируем каждый возвращаемый узел
-            updateHeight(result);
-            result = balance(result);
+    private int countBelow(int key, boolean inclusive, int maxSteps) { // -1 - спуск длиннее maxSteps
+        int count = 0;
+        for (Node n = root; n != null; ) {
+            if (--maxSteps < 0) return -1;
+            if (key < n.key || (!inclusive && key == n.key)) {
+                n = n.left;
+            } else {
+                count += size(n.left) + 1;
+                n = n.right;
+            }
         }
+        return count;
+    }
 
-        return result;
+    private void checkOrderStatistics() {
+        if (!orderStatistics) throw new IllegalStateException("дерево создано без orderStatistics");
     }
 
-    private Node minValue(Node node) { // поиск мин. узла в поддереве(влево до упора)
-        while (node.left != null) node = node.left;
-        return node;
+    public OptionalInt floor(int key) { // наибольший ключ <= key
+        Node best = null;
+        for (Node n = root; n != null; ) {
+            if (n.key <= key) {
+                best = n;
+                n = n.right;
+            } else {
+                n = n.left;
+            }
+        }
+        return best == null ? OptionalInt.empty() : OptionalInt.of(best.key);
+    }
+
+    public OptionalInt ceiling(int key) { // наименьший ключ >= key
+        Node best = null;
+        for (Node n = root; n != null; ) {
+            if (n.key >= key) {
+                best = n;
+                n = n.left;
+            } else {
+                n = n.right;
+            }
+        }
+        return best == null ? OptionalInt.empty() : OptionalInt.of(best.key);
+    }
+
+    public OptionalInt min() {
+        if (root == null) return OptionalInt.empty();
+        Node n = root;
+        while (n.left != null) n = n.left;
+        return OptionalInt.of(n.key);
+    }
+
+    public OptionalInt max() {
+        if (root == null) return OptionalInt.empty();
+        Node n = root;
+        while (n.right != null) n = n.right;
+        return OptionalInt.of(n.key);
+    }
+
+    public void insert(int key) { // итеративная вставка: спуск с записью пути, затем подъем до первой неизменной высоты
+        checkWritable();
+        int d = 0;
+        Node node = root;
+        while (node != null) { // ищем место для нового узла, запоминая путь
+            d = push(d, node);
+            node = key < node.key ? node.left : node.right; // ключ меньше идем влево, иначе вправо
+        }
+
+        Node z = newNode(key);
+        nodeCount++;
+        beginChange(key, d - 1); // поменялось поддерево родителя нового узла
+        if (d == 0) { // дерево было пустым
+            root = z;
+            return;
+        }
+        copyPath(d); // узлы пути, общие со снимком, заменяем копиями
+        Node parent = path[d - 1];
+        if (key < parent.key) parent.left = z;
+        else parent.right = z;
+
+        int before = rotations;
+        retrace(d - 1);
+        insertRotations += rotations - before;
+    }
+
+    public void delete(int key) {
+        checkWritable();
+        int d = 0;
+        Node node = root;
+        while (node != null && key != node.key) { // ищем удаляемый узел, запоминая путь
+            d = push(d, node);
+            node = key < node.key ? node.left : node.right;
+        }
+        if (node == null) return; // ключа нет
+        beginChange(key, d - 1);
+
+        if (node.left == null || node.right == null) { // СЛ1/СЛ2 - 0 или 1 потомок, его и поднимаем на место узла
+            Node child = node.left == null ? node.right : node.left;
+            copyPath(d);
+            if (d == 0) root = child;
+            else if (path[d - 1].left == node) path[d - 1].left = child;
+            else path[d - 1].right = child;
+        } else { // СЛ 3 - два потомка: спускаемся к преемнику один раз и сразу вырезаем его
+            int at = d;
+            d = push(d, node);
+            Node preemnik = node.right;
+            while (preemnik.left != null) {
+                d = push(d, preemnik);
+                preemnik = preemnik.left;
+            }
+            copyPath(d);
+            node = path[at]; // узел мог быть заменен копией
+            changedDepth = at; // у самого узла меняется ключ
+            node.key = preemnik.key; // ключ преемника переезжает в удаляемый узел
+            Node parent = path[d - 1];
+            if (parent == node) parent.right = preemnik.right; // преемник - сам правый потомок
+            else parent.left = preemnik.right;
+        }
+        nodeCount--;
+
+        int before = rotations;
+        retrace(d - 1);
+        deleteRotations += rotations - before;
+    }
+
+    private int push(int d, Node node) { // запись узла в буфер пути (с расширением при необходимости)
+        if (d == path.length) path = Arrays.copyOf(path, d * 2);
+        path[d] = node;
+        return d + 1;
+    }
+
+    private void retrace(int i) { // подъем по сохраненному пути от path[i] к корню с балансировкой
+        for (; i >= 0; i--) {
+            Node node = path[i];
+            int oldHeight = node.height;
+            update(node);
+            Node sub = balance(node);
+            if (sub != node) { // после поворота подвешиваем новый корень поддерева к родителю
+                if (i - 1 < changedDepth) changedDepth = Math.max(0, i - 1);
+                if (i == 0) root = sub;
+                else if (path[i - 1].left == node) path[i - 1].left = sub;
+                else path[i - 1].right = sub;
+            }
+            if (sub.height == oldHeight) break; // высота поддерева не изменилась - выше ничего не поменяется
+        }
+        if (orderStatistics) { // размеры же меняются до самого корня
+            for (i--; i >= 0; i--) updateSize(path[i]);
+        }
     }
 
     private Node balance(Node node) { // балансировка
@@ -102,12 +414,18 @@ public class AVLTree {
         if (bf > 1) { // СЛ 1: левое поддерево выше на 2 и более
             if (balanceFactor(node.left) < 0) { // подслучай 1B - left-right случай (LR)
                 node.left = rotateLeft(node.left);
-            };
+                doubleRotations++;
+            } else {
+                singleRotations++;
+            }
             return rotateRight(node); // подслучай 1A - left-left
         } else if (bf < -1) { // СЛ 2: правое поддерево выше на 2 и более
             if (balanceFactor(node.right) > 0) {  //  подслучай 2B: right-left (зигзаг)
                 node.right = rotateRight(node.right); // правый поворот правого потомка
-            };
+                doubleRotations++;
+            } else {
+                singleRotations++;
+            }
             return rotateLeft(node); // подслучай 2A - right-right
         }
         return node;
@@ -117,6 +435,19 @@ public class AVLTree {
         return n == null ? 0 : n.height; // высота null = 0, иначе берем из узла
     }
 
+    private void update(Node n) { // пересчет хранимых в узле полей по потомкам
+        updateHeight(n);
+        if (orderStatistics) updateSize(n);
+    }
+
+    private int size(Node n) {
+        return n == null ? 0 : ((AugNode) n).size;
+    }
+
+    private void updateSize(Node n) {
+        ((AugNode) n).size = 1 + size(n.left) + size(n.right);
+    }
+
     private void updateHeight(Node n) { // хранение высоты, чтобы потом быстро её использовать
         n.height = 1 + Math.max(height(n.left), height(n.right)); // высота = 1 + максимум из высот потомков
     }
@@ -126,28 +457,30 @@ public class AVLTree {
     }
 
     private Node rotateRight(Node y) {
-        Node x = y.left; // x - левый потомок y (станет новым корнем)
+        y = mutable(y); // потомок узла пути может быть общим со снимком
+        Node x = mutable(y.left); // x - левый потомок y (станет новым корнем)
         Node T2 = x.right; // T2 - правое поддерево x
 
         x.right = y; // поворот - y становится правым потомком x
         y.left = T2; // T2 становится левым потомком y
 
-        updateHeight(y);
-        updateHeight(x);
+        update(y);
+        update(x);
         rotations++;
 
         return x;
     }
 
     private Node rotateLeft(Node x) {
-        Node y = x.right; // y - правый потомок x (станет новым корнем)
+        x = mutable(x);
+        Node y = mutable(x.right); // y - правый потомок x (станет новым корнем)
         Node T2 = y.left; // T2 - левое поддерево y
 
         y.left = x; // поворот -  x становится левым потомком y
         x.right = T2; // T2 становится правым потомком x
 
-        updateHeight(x);
-        updateHeight(y);
+        update(x);
+        update(y);
         rotations++;
 
         return y;
@@ -155,34 +488,253 @@ public class AVLTree {
 
     public int getHeight() {return root == null ? 0 : root.height;} // получение высоты
 
-    static class AVLNodeWrapper { // класс-обертка для передачи данных в TreeCanvas
-        int key;
-        AVLNodeWrapper left, right;
-        int depth;
-        int balanceFactor;
+    public static AVLTree fromSorted(int[] keys) { // новое дерево из набора ключей за O(n)
+        AVLTree t = new AVLTree();
+        t.bulkLoad(keys);
+        return t;
+    }
+
+    public void bulkLoad(int[] keys) { // заменяет содержимое идеально сбалансированным деревом без поворотов
+        checkWritable();
+        int[] sorted = sortedCopy(keys);
+        root = buildBalanced(sorted, 0, sorted.length);
+        nodeCount = sorted.length;
+        changedAll();
+    }
+
+    public void save(Path file) throws IOException { // ключи и высоты за два прохода; на снимке не мешает писателям
+        try (TreeFile.Writer out = new TreeFile.Writer(file, TreeFile.TYPE_AVL, nodeCount)) {
+            saveKeys(root, out);
+            saveShape(root, out);
+            out.commit();
+        }
+    }
+
+    private void saveKeys(Node node, TreeFile.Writer out) throws IOException { // симметричный обход
+        if (node == null) return;
+        saveKeys(node.left, out);
+        out.key(node.key);
+        saveKeys(node.right, out);
+    }
+
+    private void saveShape(Node node, TreeFile.Writer out) throws IOException { // прямой обход
+        if (node == null) return;
+        int b = node.height << TreeFile.HEIGHT_SHIFT;
+        if (node.left != null) b |= TreeFile.HAS_LEFT;
+        if (node.right != null) b |= TreeFile.HAS_RIGHT;
+        out.shape(b);
+        saveShape(node.left, out);
+        saveShape(node.right, out);
+    }
+
+    public void load(Path file) throws IOException { // заменяет содержимое деревом той же формы за O(n), без поворотов
+        checkWritable();
+        try (TreeFile.Reader in = new TreeFile.Reader(file)) {
+            Node loaded;
+            if (in.type == TreeFile.TYPE_AVL) {
+                loaded = in.count == 0 ? null : loadShape(in, 0);
+                in.finish();
+            } else { // форма КЧД для AVL не годится - строим по ключам, как bulkLoad
+                int[] keys = in.readKeys();
+                loaded = buildBalanced(keys, 0, keys.length);
+            }
+            root = loaded; // дерево меняется только после успешного чтения всего файла
+            nodeCount = in.count;
+            changedAll();
+        }
+    }
+
+    private Node loadShape(TreeFile.Reader in, int depth) throws IOException {
+        int b = in.nextShape(depth);
+        Node left = (b & TreeFile.HAS_LEFT) != 0 ? loadShape(in, depth + 1) : null;
+        Node node = newNode(in.nextKey());
+        node.left = left;
+        node.right = (b & TreeFile.HAS_RIGHT) != 0 ? loadShape(in, depth + 1) : null;
+        update(node);
+        if (node.height != b >>> TreeFile.HEIGHT_SHIFT || Math.abs(balanceFactor(node)) > 1) throw TreeFile.corrupted(in.file);
+        return node;
+    }
+
+    static int[] sortedCopy(int[] keys) { // если ключи уже упорядочены - используем как есть, иначе сортируем копию
+        for (int i = 1; i < keys.length; i++) {
+            if (keys[i - 1] > keys[i]) {
+                int[] copy = keys.clone();
+                Arrays.sort(copy);
+                return copy;
+            }
+        }
+        return keys;
+    }
+
+    static int[] sortedDistinct(int[] keys) { // отсортированная копия партии без повторов
+        int[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (n == 0 || sorted[n - 1] != sorted[i]) sorted[n++] = sorted[i];
+        }
+        return n == sorted.length ? sorted : Arrays.copyOf(sorted, n);
+    }
+
+    private Node buildBalanced(int[] keys, int from, int to) { // середина отрезка - корень, половины - поддеревья
+        if (from >= to) return null;
+        int mid = (from + to) >>> 1;
+        Node node = newNode(keys[mid]);
+        node.left = buildBalanced(keys, from, mid);
+        node.right = buildBalanced(keys, mid + 1, to);
+        update(node); // высоты половин отличаются не больше чем на 1 - баланс уже выполнен
+        return node;
+    }
+
+    // ---------- TreeView: обход и изменения для холста ----------
+
+    public long getModCount() {return modCount;}
 
-        AVLNodeWrapper(int k, int depth, int balanceFactor){
-            this.key = k;
-            this.depth = depth;
-            this.balanceFactor = balanceFactor;
+    public AVLTree origin() {return origin;}
+
+    private void beginChange(int key, int depth) {
+        modCount++;
+        changedKey = key;
+        changedDepth = Math.max(0, depth);
+    }
+
+    private void changedAll() {
+        modCount++;
+        changedDepth = 0;
+    }
+
+    public Node root() {return root;}
+    public Node left(Node node) {return node.left;}
+    public Node right(Node node) {return node.right;}
+    public int key(Node node) {return node.key;}
+    public int decoration(Node node) {return balanceFactor(node);}
+    public int subtreeSize(Node node) {return orderStatistics ? size(node) : -1;}
+
+    public int changedPath(byte[] dirs) {
+        if (changedDepth > dirs.length) return 0;
+        Node node = root;
+        for (int i = 0; i < changedDepth; i++) { // узлы выше changedDepth не менялись - спуск по ключу повторяет путь операции
+            if (node == null) return 0;
+            dirs[i] = (byte) (changedKey < node.key ? 0 : 1);
+            node = dirs[i] == 0 ? node.left : node.right;
         }
+        return changedDepth;
     }
 
-    public AVLNodeWrapper getRootWrapper() {
-        if (root == null) return null;
-        return buildWrapper(root, 0); // построение с корня (глубина 0)
+    public void insertAll(int[] keys) { // вставка партии через split/join: соседние ключи проходят общий путь один раз
+        checkWritable();
+        int[] batch = sortedDistinct(keys);
+        int before = rotations;
+        root = union(root, batch, 0, batch.length);
+        changedAll();
+        insertRotations += rotations - before;
     }
 
-    private AVLNodeWrapper buildWrapper(Node node, int depth) { // рекурсивное построение дерева для отрисовки
-        if (node == null) return null;
+    public void deleteAll(int[] keys) { // удаление партии: по одному вхождению каждого ключа, как delete
+        checkWritable();
+        int[] batch = sortedDistinct(keys);
+        int before = rotations;
+        root = difference(root, batch, 0, batch.length);
+        changedAll();
+        deleteRotations += rotations - before;
+    }
 
-        int bf = balanceFactor(node); // вычисляем balance factor для этого узла
+    private Node union(Node node, int[] keys, int from, int to) { // вливает keys[from..to) в поддерево node
+        if (from >= to) return node;
+        if (node == null) { // пустое место - сразу строим сбалансированное поддерево из оставшихся ключей
+            nodeCount += to - from;
+            return buildBalanced(keys, from, to);
+        }
+        int split = lowerBound(keys, from, to, node.key); // ключи >= node.key уходят вправо, как в insert
+        Node l = union(node.left, keys, from, split);
+        Node r = union(node.right, keys, split, to);
+        return join(l, node, r);
+    }
 
-        AVLNodeWrapper w = new AVLNodeWrapper(node.key, depth, bf); // создаем обертку с данными для отрисовки
+    private Node difference(Node node, int[] keys, int from, int to) { // убирает keys[from..to) из поддерева node
+        if (node == null || from >= to) return node;
+        int split = lowerBound(keys, from, to, node.key);
+        boolean hit = split < to && keys[split] == node.key; // сам node удаляется
+        Node l = difference(node.left, keys, from, split);
+        Node r = difference(node.right, keys, hit ? split + 1 : split, to);
+        if (!hit) return join(l, node, r);
+        nodeCount--;
+        return join2(l, r);
+    }
 
-        w.left = buildWrapper(node.left, depth+1);
-        w.right = buildWrapper(node.right, depth+1);
-        return w;
+    private static int lowerBound(int[] keys, int from, int to, int key) { // первый индекс с keys[i] >= key
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (keys[mid] < key) from = mid + 1;
+            else to = mid;
+        }
+        return from;
+    }
+
+    private Node join(Node l, Node mid, Node r) { // склейка l < mid <= r при любой разнице высот l и r
+        mid = mutable(mid); // mid - старый узел дерева, его связи перезаписываются
+        if (height(l) > height(r) + 1) return joinRight(l, mid, r);
+        if (height(r) > height(l) + 1) return joinLeft(l, mid, r);
+        mid.left = l;
+        mid.right = r;
+        update(mid);
+        return mid;
+    }
+
+    private Node joinRight(Node l, Node mid, Node r) { // l выше: спускаемся по правому краю l до высоты r
+        if (height(l) <= height(r) + 1) {
+            mid.left = l;
+            mid.right = r;
+            update(mid);
+            return mid;
+        }
+        l = mutable(l);
+        l.right = joinRight(l.right, mid, r);
+        update(l);
+        return balance(l); // высота правого края выросла не больше чем на 1 - хватает обычной балансировки
+    }
+
+    private Node joinLeft(Node l, Node mid, Node r) { // симметрично - r выше
+        if (height(r) <= height(l) + 1) {
+            mid.left = l;
+            mid.right = r;
+            update(mid);
+            return mid;
+        }
+        r = mutable(r);
+        r.left = joinLeft(l, mid, r.left);
+        update(r);
+        return balance(r);
+    }
+
+    private Node join2(Node l, Node r) { // склейка без среднего узла: им становится минимум r
+        if (l == null) return r;
+        if (r == null) return l;
+        Node rest = removeMin(r);
+        Node min = removedMin;
+        removedMin = null;
+        return join(l, min, rest);
+    }
+
+    private Node removeMin(Node node) { // вырезает минимальный узел (в removedMin) с балансировкой по пути
+        if (node.left == null) {
+            removedMin = node;
+            return node.right;
+        }
+        node = mutable(node);
+        node.left = removeMin(node.left);
+        update(node);
+        return balance(node);
+    }
+
+    public int tracePath(int key, int[] path) { // итеративный поиск с ограничением длины - безопасен для оптимистичного чтения
+        int d = 0;
+        for (Node node = root; node != null; node = key < node.key ? node.left : node.right) {
+            if (d == path.length) return -1;
+            path[d++] = node.key;
+            if (key == node.key) return d;
+        }
+        return 0;
     }
 
     public List<Integer> findPath(int key) {
@@ -0,0 +1,274 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+public class ArrayAVLTree implements IntTree { // AVL-дерево на параллельных массивах (struct-of-arrays) вместо объекта Node на каждый ключ
+
+    private static final int NIL = 0; // индекс 0 зарезервирован под "пустой" узел (аналог null)
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // узел i описывается четверкой key[i], left[i], right[i], height[i] - ~13 байт на ключ
+    private int[] key;
+    private int[] left, right; // индексы потомков вместо ссылок
+    private byte[] height; // высота AVL-дерева с int-узлами не превышает ~45, byte хватает
+
+    private int root = NIL;
+    private int[] path = new int[64]; // переиспользуемый буфер пути для insert/delete
+    private int[] rangeStack = new int[64]; // то же для обходов диапазона; null - занят идущим обходом
+    private int used = 1; // первый ни разу не выданный слот (слот 0 - NIL)
+    private int freeHead = NIL; // голова списка освобожденных слотов, связанного через left[]
+    private int rotations = 0;
+    private int nodeCount = 0;
+
+    public ArrayAVLTree() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ArrayAVLTree(int capacity) { // емкость заранее, чтобы не расширять массивы при заполнении
+        int cap = Math.max(2, capacity + 1); // +1 под NIL
+        key = new int[cap];
+        left = new int[cap];
+        right = new int[cap];
+        height = new byte[cap]; // height[NIL] = 0
+    }
+
+    public int getRotations() {return rotations;}
+    public void resetRotations() {this.rotations = 0;}
+    public int getNodeCount() {return nodeCount;}
+    public int getHeight() {return height[root];}
+
+    public boolean contains(int k) {
+        int node = root;
+        while (node != NIL) {
+            if (k == key[node]) return true;
+            node = k < key[node] ? left[node] : right[node];
+        }
+        return false;
+    }
+
+    public void forEachInRange(int lo, int hi, IntConsumer action) { // ключи из [lo, hi] по возрастанию, как в AVLTree
+        if (root == NIL || lo > hi) return;
+        int[] stack = takeRangeStack();
+        int sp = 0;
+        for (int n = root; n != NIL; ) { // спуск к первому ключу >= lo
+            if (key[n] < lo) {
+                n = right[n];
+            } else {
+                stack[sp++] = n;
+                n = left[n];
+            }
+        }
+        while (sp > 0) {
+            int n = stack[--sp];
+            if (key[n] > hi) break;
+            action.accept(key[n]);
+            for (n = right[n]; n != NIL; n = left[n]) stack[sp++] = n;
+        }
+        rangeStack = stack;
+    }
+
+    public int countInRange(int lo, int hi) { // O(log n + k)
+        if (root == NIL || lo > hi) return 0;
+        int[] stack = takeRangeStack();
+        int sp = 0, count = 0;
+        for (int n = root; n != NIL; ) {
+            if (key[n] < lo) {
+                n = right[n];
+            } else {
+                stack[sp++] = n;
+                n = left[n];
+            }
+        }
+        while (sp > 0) {
+            int n = stack[--sp];
+            if (key[n] > hi) break;
+            count++;
+            for (n = right[n]; n != NIL; n = left[n]) stack[sp++] = n;
+        }
+        rangeStack = stack;
+        return count;
+    }
+
+    private int[] takeRangeStack() { // глубже высоты стек не бывает; вложенный обход из action получит свой массив
+        int[] stack = rangeStack;
+        rangeStack = null;
+        return stack != null && stack.length >= height[root] ? stack : new int[Math.max(64, height[root])];
+    }
+
+    private int allocate(int k) { // берем слот из списка свободных, иначе следующий новый
+        int n;
+        if (freeHead != NIL) {
+            n = freeHead;
+            freeHead = left[n];
+        } else {
+            if (used == key.length) grow();
+            n = used++;
+        }
+        key[n] = k;
+        left[n] = right[n] = NIL;
+        height[n] = 1;
+        return n;
+    }
+
+    private void release(int n) { // слот возвращается в список свободных и будет переиспользован
+        left[n] = freeHead;
+        right[n] = NIL;
+        height[n] = 0;
+        freeHead = n;
+    }
+
+    private void grow() { // увеличиваем массивы в 1.5 раза
+        int cap = key.length + (key.length >> 1) + 1;
+        key = Arrays.copyOf(key, cap);
+        left = Arrays.copyOf(left, cap);
+        right = Arrays.copyOf(right, cap);
+        height = Arrays.copyOf(height, cap);
+    }
+
+    public void insert(int k) { // итеративно, как в AVLTree: спуск с записью пути и подъем до первой неизменной высоты
+        int d = 0;
+        int node = root;
+        while (node != NIL) {
+            d = push(d, node);
+            node = k < key[node] ? left[node] : right[node]; // как в AVLTree - равные ключи уходят вправо
+        }
+
+        int z = allocate(k);
+        nodeCount++;
+        if (d == 0) {
+            root = z;
+            return;
+        }
+        int parent = path[d - 1];
+        if (k < key[parent]) left[parent] = z;
+        else right[parent] = z;
+
+        retrace(d - 1);
+    }
+
+    public void delete(int k) {
+        int d = 0;
+        int node = root;
+        while (node != NIL && k != key[node]) {
+            d = push(d, node);
+            node = k < key[node] ? left[node] : right[node];
+        }
+        if (node == NIL) return;
+
+        if (left[node] == NIL || right[node] == NIL) { // 0 или 1 потомок
+            int child = left[node] == NIL ? right[node] : left[node];
+            if (d == 0) root = child;
+            else if (left[path[d - 1]] == node) left[path[d - 1]] = child;
+            else right[path[d - 1]] = child;
+            release(node);
+        } else { // два потомка - вырезаем преемника за один проход
+            d = push(d, node);
+            int preemnik = right[node];
+            while (left[preemnik] != NIL) {
+                d = push(d, preemnik);
+                preemnik = left[preemnik];
+            }
+            key[node] = key[preemnik];
+            int parent = path[d - 1];
+            if (parent == node) right[parent] = right[preemnik];
+            else left[parent] = right[preemnik];
+            release(preemnik);
+        }
+        nodeCount--;
+
+        retrace(d - 1);
+    }
+
+    private int push(int d, int node) {
+        if (d == path.length) path = Arrays.copyOf(path, d * 2);
+        path[d] = node;
+        return d + 1;
+    }
+
+    private void retrace(int i) {
+        for (; i >= 0; i--) {
+            int node = path[i];
+            int oldHeight = height[node];
+            updateHeight(node);
+            int sub = balance(node);
+            if (sub != node) {
+                if (i == 0) root = sub;
+                else if (left[path[i - 1]] == node) left[path[i - 1]] = sub;
+                else right[path[i - 1]] = sub;
+            }
+            if (height[sub] == oldHeight) break; // дальше высоты не меняются
+        }
+    }
+
+    private int balance(int node) {
+        int bf = balanceFactor(node);
+        if (bf > 1) {
+            if (balanceFactor(left[node]) < 0) { // LR
+                left[node] = rotateLeft(left[node]);
+            }
+            return rotateRight(node); // LL
+        } else if (bf < -1) {
+            if (balanceFactor(right[node]) > 0) { // RL
+                right[node] = rotateRight(right[node]);
+            }
+            return rotateLeft(node); // RR
+        }
+        return node;
+    }
+
+    private void updateHeight(int n) { // height[NIL] всегда 0, поэтому проверки на пустых потомков не нужны
+        height[n] = (byte) (1 + Math.max(height[left[n]], height[right[n]]));
+    }
+
+    private int balanceFactor(int n) {
+        return height[left[n]] - height[right[n]];
+    }
+
+    private int rotateRight(int y) {
+        int x = left[y];
+        left[y] = right[x];
+        right[x] = y;
+
+        updateHeight(y);
+        updateHeight(x);
+        rotations++;
+
+        return x;
+    }
+
+    private int rotateLeft(int x) {
+        int y = right[x];
+        right[x] = left[y];
+        left[y] = x;
+
+        updateHeight(x);
+        updateHeight(y);
+        rotations++;
+
+        return y;
+    }
+
+    public List<Integer> findPath(int k) {
+        List<Integer> path = new ArrayList<>();
+        findPathRec(root, k, path);
+        return path;
+    }
+
+    private boolean findPathRec(int node, int k, List<Integer> path) {
+        if (node == NIL) return false;
+
+        path.add(key[node]);
+
+        if (k == key[node]) {
+            return true;
+        } else if (k < key[node]) {
+            if (findPathRec(left[node], k, path)) return true;
+        } else {
+            if (findPathRec(right[node], k, path)) return true;
+        }
+
+        path.remove(path.size() - 1); // не нашли в этом поддереве
+        return false;
+    }
+}
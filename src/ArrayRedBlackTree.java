@@ -0,0 +1,386 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+public class ArrayRedBlackTree implements IntTree { // КЧД на примитивных массивах: индексы вместо ссылок, цвет упакован в знаковый бит родителя
+
+    private static final int NIL = 0; // индекс 0 - общий черный NIL-лист
+    private static final int RED_BIT = 0x80000000; // знаковый бит parentColor[i] = узел красный
+    private static final int PARENT_MASK = 0x7FFFFFFF; // остальные 31 бит - индекс родителя
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] key;
+    private int[] left, right;
+    private int[] parentColor; // индекс родителя | RED_BIT
+    private byte[] height; // высота поддерева, как Node.height у RedBlackTree (у NIL = 0)
+
+    private int root = NIL;
+    private int used = 1; // первый ни разу не выданный слот
+    private int freeHead = NIL; // список свободных слотов через left[]
+    private int rotations = 0;
+    private int nodeCount = 0;
+
+    public ArrayRedBlackTree() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ArrayRedBlackTree(int capacity) {
+        int cap = Math.max(2, capacity + 1); // +1 под NIL
+        key = new int[cap];
+        left = new int[cap];
+        right = new int[cap];
+        parentColor = new int[cap]; // NIL черный, связи NIL ведут в NIL
+        height = new byte[cap];
+    }
+
+    public int getRotations() {return rotations;}
+    public void resetRotations() {this.rotations = 0;}
+    public int getNodeCount() {return nodeCount;}
+
+    public int getHeight() { // высота хранится в корне - O(1)
+        return height[root];
+    }
+
+    private void updateHeight(int n) {
+        height[n] = (byte) (1 + Math.max(height[left[n]], height[right[n]]));
+    }
+
+    private void updateHeightsUp(int x) { // как у RedBlackTree: выше узла с неизменной высотой ничего не меняется
+        while (x != NIL) {
+            int old = height[x];
+            updateHeight(x);
+            if (height[x] == old) return;
+            x = parent(x);
+        }
+    }
+
+    // доступ к упакованному полю parentColor
+    private int parent(int n) {return parentColor[n] & PARENT_MASK;}
+    private boolean isRed(int n) {return parentColor[n] < 0;}
+    private void setParent(int n, int p) {parentColor[n] = (parentColor[n] & RED_BIT) | p;}
+    private void setRed(int n) {parentColor[n] |= RED_BIT;}
+    private void setBlack(int n) {parentColor[n] &= PARENT_MASK;}
+    private void setColor(int n, boolean red) {
+        if (red) setRed(n); else setBlack(n);
+    }
+
+    public boolean contains(int k) {
+        return searchNode(root, k) != NIL;
+    }
+
+    private int searchNode(int x, int k) {
+        while (x != NIL) {
+            if (k == key[x]) return x;
+            x = (k < key[x]) ? left[x] : right[x];
+        }
+        return NIL;
+    }
+
+    public void forEachInRange(int lo, int hi, IntConsumer action) { // ключи из [lo, hi] по возрастанию, шаги через parent
+        if (lo > hi) return;
+        for (int x = ceilingNode(lo); x != NIL && key[x] <= hi; x = successor(x)) {
+            action.accept(key[x]);
+        }
+    }
+
+    public int countInRange(int lo, int hi) { // O(log n + k)
+        if (lo > hi) return 0;
+        int count = 0;
+        for (int x = ceilingNode(lo); x != NIL && key[x] <= hi; x = successor(x)) count++;
+        return count;
+    }
+
+    private int ceilingNode(int k) { // первый по порядку узел с ключом >= k
+        int best = NIL;
+        for (int x = root; x != NIL; ) {
+            if (key[x] >= k) {
+                best = x;
+                x = left[x];
+            } else {
+                x = right[x];
+            }
+        }
+        return best;
+    }
+
+    private int successor(int x) {
+        if (right[x] != NIL) return minimum(right[x]);
+        int p = parent(x);
+        while (p != NIL && x == right[p]) {
+            x = p;
+            p = parent(p);
+        }
+        return p;
+    }
+
+    private int allocate(int k) {
+        int n;
+        if (freeHead != NIL) {
+            n = freeHead;
+            freeHead = left[n];
+        } else {
+            if (used == key.length) grow();
+            n = used++;
+        }
+        key[n] = k;
+        left[n] = right[n] = NIL;
+        parentColor[n] = RED_BIT; // новые узлы красные, родитель NIL
+        height[n] = 1;
+        return n;
+    }
+
+    private void release(int n) {
+        left[n] = freeHead;
+        right[n] = NIL;
+        parentColor[n] = NIL;
+        height[n] = 0;
+        freeHead = n;
+    }
+
+    private void grow() {
+        int cap = key.length + (key.length >> 1) + 1;
+        key = Arrays.copyOf(key, cap);
+        left = Arrays.copyOf(left, cap);
+        right = Arrays.copyOf(right, cap);
+        parentColor = Arrays.copyOf(parentColor, cap);
+        height = Arrays.copyOf(height, cap);
+    }
+
+    public void insert(int k) {
+        int z = allocate(k); // выделяем слот до любых записей в массивы - grow() может их заменить
+
+        int y = NIL;
+        int x = root;
+        while (x != NIL) {
+            y = x;
+            x = (k < key[x]) ? left[x] : right[x];
+        }
+
+        setParent(z, y);
+        if (y == NIL) root = z;
+        else if (k < key[y]) left[y] = z;
+        else right[y] = z;
+
+        updateHeightsUp(y); // высоты до балансировки, повороты поправят свои узлы сами
+        insertFixup(z);
+        nodeCount++;
+    }
+
+    private void insertFixup(int z) {
+        while (isRed(parent(z))) { // у NIL знаковый бит не выставлен, поэтому проверка parent != NIL не нужна
+            int p = parent(z);
+            int g = parent(p);
+            if (p == left[g]) {
+                int y = right[g]; // дядя
+                if (isRed(y)) { // дядя красный - перекрашиваем и поднимаемся к деду
+                    setBlack(p);
+                    setBlack(y);
+                    setRed(g);
+                    z = g;
+                } else { // дядя черный
+                    if (z == right[p]) {
+                        z = p;
+                        leftRotate(z);
+                    }
+                    p = parent(z);
+                    g = parent(p);
+                    setBlack(p);
+                    setRed(g);
+                    rightRotate(g);
+                }
+            } else { // симметрично
+                int y = left[g];
+                if (isRed(y)) {
+                    setBlack(p);
+                    setBlack(y);
+                    setRed(g);
+                    z = g;
+                } else {
+                    if (z == left[p]) {
+                        z = p;
+                        rightRotate(z);
+                    }
+                    p = parent(z);
+                    g = parent(p);
+                    setBlack(p);
+                    setRed(g);
+                    leftRotate(g);
+                }
+            }
+        }
+        setBlack(root);
+    }
+
+    public void delete(int k) {
+        int z = searchNode(root, k);
+        if (z == NIL) return;
+
+        int y = z;
+        boolean yOriginalRed = isRed(y);
+        int x;
+
+        if (left[z] == NIL) {
+            x = right[z];
+            transplant(z, right[z]);
+        } else if (right[z] == NIL) {
+            x = left[z];
+            transplant(z, left[z]);
+        } else {
+            y = minimum(right[z]);
+            yOriginalRed = isRed(y);
+            x = right[y];
+
+            if (parent(y) == z) {
+                setParent(x, y); // x может быть NIL - его родитель нужен deleteFixup
+            } else {
+                transplant(y, right[y]);
+                right[y] = right[z];
+                setParent(right[y], y);
+            }
+            transplant(z, y);
+            left[y] = left[z];
+            setParent(left[y], y);
+            setColor(y, isRed(z));
+            height[y] = height[z]; // старая высота позиции z - подъем ниже может остановиться раньше
+        }
+        updateHeightsUp(parent(x)); // самый нижний измененный узел (у NIL родитель выставлен выше)
+        if (!yOriginalRed) deleteFixup(x);
+        release(z);
+        nodeCount--;
+    }
+
+    private void transplant(int u, int v) {
+        int up = parent(u);
+        if (up == NIL) root = v;
+        else if (u == left[up]) left[up] = v;
+        else right[up] = v;
+        setParent(v, up);
+    }
+
+    private int minimum(int x) {
+        while (left[x] != NIL) x = left[x];
+        return x;
+    }
+
+    private void deleteFixup(int x) {
+        while (x != root && !isRed(x)) {
+            int p = parent(x);
+            if (x == left[p]) {
+                int w = right[p];
+                if (isRed(w)) {
+                    setBlack(w);
+                    setRed(p);
+                    leftRotate(p);
+                    w = right[p];
+                }
+                if (!isRed(left[w]) && !isRed(right[w])) { // оба потомка брата черные (NIL тоже черный)
+                    setRed(w);
+                    x = p;
+                } else {
+                    if (!isRed(right[w])) {
+                        setBlack(left[w]);
+                        setRed(w);
+                        rightRotate(w);
+                        w = right[p];
+                    }
+                    setColor(w, isRed(p));
+                    setBlack(p);
+                    setBlack(right[w]);
+                    leftRotate(p);
+                    x = root;
+                }
+            } else {
+                int w = left[p];
+                if (isRed(w)) {
+                    setBlack(w);
+                    setRed(p);
+                    rightRotate(p);
+                    w = left[p];
+                }
+                if (!isRed(right[w]) && !isRed(left[w])) {
+                    setRed(w);
+                    x = p;
+                } else {
+                    if (!isRed(left[w])) {
+                        setBlack(right[w]);
+                        setRed(w);
+                        leftRotate(w);
+                        w = left[p];
+                    }
+                    setColor(w, isRed(p));
+                    setBlack(p);
+                    setBlack(left[w]);
+                    rightRotate(p);
+                    x = root;
+                }
+            }
+        }
+        setBlack(x);
+    }
+
+    private void leftRotate(int x) {
+        int y = right[x];
+
+        right[x] = left[y];
+        if (left[y] != NIL) setParent(left[y], x);
+
+        int xp = parent(x);
+        setParent(y, xp);
+        if (xp == NIL) root = y;
+        else if (x == left[xp]) left[xp] = y;
+        else right[xp] = y;
+
+        left[y] = x;
+        setParent(x, y);
+
+        updateHeight(x); // сначала опустившийся x, потом y и его предки
+        updateHeight(y);
+        updateHeightsUp(parent(y));
+        rotations++;
+    }
+
+    private void rightRotate(int x) {
+        int y = left[x];
+
+        left[x] = right[y];
+        if (right[y] != NIL) setParent(right[y], x);
+
+        int xp = parent(x);
+        setParent(y, xp);
+        if (xp == NIL) root = y;
+        else if (x == right[xp]) right[xp] = y;
+        else left[xp] = y;
+
+        right[y] = x;
+        setParent(x, y);
+
+        updateHeight(x); // сначала опустившийся x, потом y и его предки
+        updateHeight(y);
+        updateHeightsUp(parent(y));
+        rotations++;
+    }
+
+    public List<Integer> findPath(int k) {
+        List<Integer> path = new ArrayList<>();
+        findPathRec(root, k, path);
+        return path;
+    }
+
+    private boolean findPathRec(int node, int k, List<Integer> path) {
+        if (node == NIL) return false;
+
+        path.add(key[node]);
+
+        if (k == key[node]) {
+            return true;
+        } else if (k < key[node]) {
+            if (findPathRec(left[node], k, path)) return true;
+        } else {
+            if (findPathRec(right[node], k, path)) return true;
+        }
+
+        path.remove(path.size() - 1);
+        return false;
+    }
+}
@@ -0,0 +1,280 @@
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class BenchCli { // запуск сравнений без UI: классы JavaFX не загружаются, можно гонять на сервере/CI
+    // java -cp app/target/classes BenchCli --n 1e3:1e7 --per-decade 2 --workload uniform,sequential --format csv --out res.csv
+
+    private static final String USAGE = String.join("\n",
+            "Использование: BenchCli [опции]",
+            "  --n LIST|FROM:TO       размеры: 1000,10000 или 1e3:1e8 (логарифмическая шкала), по умолчанию 1e3:1e6",
+            "  --per-decade K         точек на порядок для FROM:TO, по умолчанию 1",
+            "  --reps R               повторений на конфигурацию, по умолчанию 3",
+            "  --workload LIST        uniform,sequential,reverse,zipf,clustered,sliding_window (по умолчанию uniform)",
+            "  --mix M                insert | mixed | read-heavy | I/D/C в процентах, по умолчанию mixed",
+            "  --skew S               параметр Ципфа, по умолчанию 1.0",
+            "  --key-space K          ключи из [0, K), по умолчанию 1000000",
+            "  --seed S               seed генератора, по умолчанию 42",
+            "  --trace FILE           вместо генерации - трасса операций (Workload.fromTrace), --n и --workload не нужны",
+            "  --trees LIST           rbt,avl,array-rbt,array-avl (по умолчанию rbt,avl)",
+            "  --format csv|json      csv или json (объект на строку), по умолчанию csv",
+            "  --out FILE             куда писать, по умолчанию stdout",
+            "  --no-latency           без прохода с замером каждой операции (вдвое быстрее)",
+            "  --workers K            повторы параллельно на K потоках (не больше числа ядер), по умолчанию 1");
+
+    private static final String[] OPS = {"insert", "delete", "contains"};
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    public static void main(String[] args) {
+        Options o;
+        try {
+            o = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            CliArgs.exitUsage(e, USAGE);
+            return;
+        }
+        if (o.help) {
+            System.out.println(USAGE);
+            return;
+        }
+        try {
+            run(o);
+        } catch (IOException e) {
+            CliArgs.exitError(e);
+        }
+    }
+
+    private static void run(Options o) throws IOException {
+        PrintWriter out = o.out == null
+                ? new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                : new PrintWriter(Files.newBufferedWriter(o.out, StandardCharsets.UTF_8));
+        TreeCompare comparator = new TreeCompare();
+        comparator.setWorkers(o.workers);
+        try {
+            if (o.csv) out.println(csvHeader());
+            out.flush();
+
+            if (o.trace != null) { // трасса - одна конфигурация, размеры и шаблоны не используются
+                Workload w = Workload.fromTrace(o.trace);
+                for (String tree : o.trees) {
+                    emit(out, o, tree, w, w.size(), comparator.runWorkload(tree.endsWith("rbt"), tree.startsWith("array"), w, o.reps, o.latency));
+                }
+                return;
+            }
+            for (int n : o.sizes) {
+                for (Workload.Pattern p : o.patterns) {
+                    int initial = o.mix == Workload.OpMix.INSERT_ONLY ? 0 : n / 2; // как compareMixedOperations
+                    Workload w = Workload.generate(p, o.skew, o.keySpace, initial, n, o.mix, o.seed);
+                    for (String tree : o.trees) {
+                        emit(out, o, tree, w, n, comparator.runWorkload(tree.endsWith("rbt"), tree.startsWith("array"), w, o.reps, o.latency));
+                    }
+                }
+            }
+        } finally {
+            if (o.out == null) out.flush();
+            else out.close();
+        }
+    }
+
+    private static void emit(PrintWriter out, Options o, String tree, Workload w, int n, TreeCompare.TreeRun r) { // строка сразу в вывод
+        double opsPerSec = w.size() / (r.time / 1000.0);
+        TreeCompare.Latency lat = r.latency;
+        LatencyHistogram[] hist = {lat.insert, lat.delete, lat.contains};
+        if (o.csv) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(tree).append(',').append(csv(w.name)).append(',').append(n).append(',')
+                    .append(w.initial.length).append(',').append(w.size()).append(',').append(o.reps).append(',')
+                    .append(fmt(r.time)).append(',').append(fmt(opsPerSec)).append(',')
+                    .append(fmt(r.rotations)).append(',').append(fmt(r.height)).append(',')
+                    .append(csvNumber(r.memory.bytesPerOp)).append(',').append(csvNumber(r.memory.retainedPerNode)).append(',')
+                    .append(csvNumber(r.memory.gcCount)).append(',').append(csvNumber(r.memory.gcPauseMs));
+            for (LatencyHistogram h : hist) {
+                for (double p : PERCENTILES) sb.append(',').append(h.getCount() == 0 ? "" : String.valueOf(h.percentile(p)));
+                sb.append(',').append(h.getCount() == 0 ? "" : String.valueOf(h.getMax()));
+            }
+            out.println(sb);
+        } else {
+            StringBuilder sb = new StringBuilder("{");
+            sb.append("\"tree\":\"").append(tree).append("\",\"workload\":\"").append(json(w.name)).append('"')
+                    .append(",\"n\":").append(n).append(",\"initial\":").append(w.initial.length)
+                    .append(",\"ops\":").append(w.size()).append(",\"reps\":").append(o.reps)
+                    .append(",\"time_ms\":").append(fmt(r.time)).append(",\"ops_per_sec\":").append(fmt(opsPerSec))
+                    .append(",\"rotations\":").append(fmt(r.rotations)).append(",\"height\":").append(fmt(r.height))
+                    .append(",\"bytes_per_op\":").append(jsonNumber(r.memory.bytesPerOp))
+                    .append(",\"retained_per_node\":").append(jsonNumber(r.memory.retainedPerNode))
+                    .append(",\"gc_count\":").append(jsonNumber(r.memory.gcCount))
+                    .append(",\"gc_pause_ms\":").append(jsonNumber(r.memory.gcPauseMs));
+            for (int i = 0; i < hist.length; i++) {
+                if (hist[i].getCount() == 0) continue;
+                sb.append(",\"").append(OPS[i]).append("_ns\":{");
+                for (int j = 0; j < PERCENTILES.length; j++) {
+                    sb.append('"').append(PERCENTILE_NAMES[j]).append("\":").append(hist[i].percentile(PERCENTILES[j])).append(',');
+                }
+                sb.append("\"max\":").append(hist[i].getMax()).append('}');
+            }
+            out.println(sb.append('}'));
+        }
+        out.flush(); // строка видна сразу, даже если следующая конфигурация считается час
+    }
+
+    private static String csvHeader() {
+        StringBuilder sb = new StringBuilder("tree,workload,n,initial,ops,reps,time_ms,ops_per_sec,rotations,height,bytes_per_op,retained_per_node,gc_count,gc_pause_ms");
+        for (String op : OPS) {
+            for (String p : PERCENTILE_NAMES) sb.append(',').append(op).append('_').append(p).append("_ns");
+            sb.append(',').append(op).append("_max_ns");
+        }
+        return sb.toString();
+    }
+
+    private static String fmt(double v) {
+        return String.format(Locale.ROOT, "%.3f", v);
+    }
+
+    private static String csvNumber(double v) { // NaN - пустая ячейка
+        return Double.isNaN(v) ? "" : fmt(v);
+    }
+
+    private static String jsonNumber(double v) { // в JSON нет NaN
+        return Double.isNaN(v) ? "null" : fmt(v);
+    }
+
+    private static String csv(String s) {
+        return s.indexOf(',') < 0 && s.indexOf('"') < 0 ? s : '"' + s.replace("\"", "\"\"") + '"';
+    }
+
+    private static String json(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    // ---------- разбор аргументов ----------
+
+    private static final class Options {
+        int[] sizes = logRange(1_000, 1_000_000, 1);
+        int reps = 3;
+        List<Workload.Pattern> patterns = List.of(Workload.Pattern.UNIFORM);
+        Workload.OpMix mix = Workload.OpMix.MIXED;
+        double skew = 1.0;
+        int keySpace = 1_000_000;
+        long seed = 42;
+        Path trace;
+        List<String> trees = List.of("rbt", "avl");
+        boolean csv = true;
+        Path out;
+        boolean latency = true;
+        int workers = 1;
+        boolean help;
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            int perDecade = 1;
+            String sizes = null;
+            for (int i = 0; i < args.length; i++) {
+                String a = args[i];
+                switch (a) {
+                    case "-h":
+                    case "--help": o.help = true; break;
+                    case "--no-latency": o.latency = false; break;
+                    case "--n": sizes = CliArgs.value(args, ++i, a); break;
+                    case "--per-decade": perDecade = (int) CliArgs.number(CliArgs.value(args, ++i, a), a); break;
+                    case "--reps": o.reps = (int) CliArgs.number(CliArgs.value(args, ++i, a), a); break;
+                    case "--workers": o.workers = (int) CliArgs.number(CliArgs.value(args, ++i, a), a); break;
+                    case "--workload": o.patterns = patterns(CliArgs.value(args, ++i, a)); break;
+                    case "--mix": o.mix = mix(CliArgs.value(args, ++i, a)); break;
+                    case "--skew": o.skew = CliArgs.number(CliArgs.value(args, ++i, a), a); break;
+                    case "--key-space": o.keySpace = (int) CliArgs.number(CliArgs.value(args, ++i, a), a); break;
+                    case "--seed": o.seed = (long) CliArgs.number(CliArgs.value(args, ++i, a), a); break;
+                    case "--trace": o.trace = Paths.get(CliArgs.value(args, ++i, a)); break;
+                    case "--trees": o.trees = trees(CliArgs.value(args, ++i, a)); break;
+                    case "--format": o.csv = format(CliArgs.value(args, ++i, a)); break;
+                    case "--out": o.out = Paths.get(CliArgs.value(args, ++i, a)); break;
+                    default: throw new IllegalArgumentException("неизвестная опция: " + a);
+                }
+            }
+            if (o.reps < 1 || perDecade < 1 || o.keySpace < 1 || o.workers < 1 || o.skew <= 0) {
+                throw new IllegalArgumentException("--reps, --per-decade, --key-space и --workers должны быть >= 1, --skew > 0");
+            }
+            if (sizes != null) o.sizes = sizes(sizes, perDecade);
+            else if (perDecade != 1) o.sizes = logRange(1_000, 1_000_000, perDecade);
+            return o;
+        }
+
+        private static int[] sizes(String s, int perDecade) {
+            int colon = s.indexOf(':');
+            if (colon >= 0) {
+                double from = CliArgs.number(s.substring(0, colon), "--n"), to = CliArgs.number(s.substring(colon + 1), "--n");
+                if (from < 1 || to < from || to > Integer.MAX_VALUE) throw new IllegalArgumentException("--n: неверный диапазон " + s);
+                return logRange(from, to, perDecade);
+            }
+            String[] parts = s.split(",");
+            int[] sizes = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                double v = CliArgs.number(parts[i], "--n");
+                if (v < 1 || v > Integer.MAX_VALUE) throw new IllegalArgumentException("--n: неверный размер " + parts[i]);
+                sizes[i] = (int) v;
+            }
+            return sizes;
+        }
+
+        static int[] logRange(double from, double to, int perDecade) { // from, from*10^(1/k), ... <= to
+            List<Integer> values = new ArrayList<>();
+            for (int i = 0; ; i++) {
+                double v = from * Math.pow(10, (double) i / perDecade);
+                if (v > to * (1 + 1e-9)) break;
+                int n = (int) Math.round(v);
+                if (values.isEmpty() || values.get(values.size() - 1) != n) values.add(n);
+            }
+            return values.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        private static List<Workload.Pattern> patterns(String s) {
+            List<Workload.Pattern> result = new ArrayList<>();
+            for (String name : s.split(",")) {
+                try {
+                    result.add(Workload.Pattern.valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_')));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("--workload: неизвестный шаблон " + name);
+                }
+            }
+            return result;
+        }
+
+        private static Workload.OpMix mix(String s) {
+            switch (s) {
+                case "insert": return Workload.OpMix.INSERT_ONLY;
+                case "mixed": return Workload.OpMix.MIXED;
+                case "read-heavy": return Workload.OpMix.READ_HEAVY;
+                default:
+                    String[] parts = s.split("/");
+                    if (parts.length != 3) throw new IllegalArgumentException("--mix: ожидается insert, mixed, read-heavy или I/D/C");
+                    return new Workload.OpMix((int) CliArgs.number(parts[0], "--mix"), (int) CliArgs.number(parts[1], "--mix"),
+                            (int) CliArgs.number(parts[2], "--mix"));
+            }
+        }
+
+        private static final List<String> TREES = List.of("rbt", "avl", "array-rbt", "array-avl");
+
+        private static List<String> trees(String s) {
+            List<String> result = new ArrayList<>();
+            for (String t : s.split(",")) {
+                String name = t.trim().toLowerCase(Locale.ROOT);
+                if (!TREES.contains(name)) throw new IllegalArgumentException("--trees: неизвестное дерево " + t);
+                result.add(name);
+            }
+            return result;
+        }
+
+        private static boolean format(String s) {
+            if (s.equals("csv")) return true;
+            if (s.equals("json")) return false;
+            throw new IllegalArgumentException("--format: csv или json");
+        }
+    }
+}
@@ -0,0 +1,28 @@
+public final class CliArgs { // общий разбор аргументов точек входа без UI (BenchCli, TreeExport)
+
+    private CliArgs() {}
+
+    static String value(String[] args, int i, String option) {
+        if (i >= args.length) throw new IllegalArgumentException("у " + option + " нет значения");
+        return args[i];
+    }
+
+    static double number(String s, String option) { // понимает и 1e6
+        try {
+            return Double.parseDouble(s.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + ": не число: " + s);
+        }
+    }
+
+    static void exitUsage(IllegalArgumentException e, String usage) { // ошибка в аргументах: что не так и справка, код 2
+        System.err.println(e.getMessage());
+        System.err.println(usage);
+        System.exit(2);
+    }
+
+    static void exitError(Exception e) { // ошибка при работе (файлы и т.п.), код 1
+        System.err.println("Ошибка: " + e.getMessage());
+        System.exit(1);
+    }
+}
@@ -0,0 +1,229 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntConsumer;
+
+public class ConcurrentTree { // потокобезопасная обертка над AVLTree/RedBlackTree: чтение без блокировок, писатели по очереди
+
+    private static final int MAX_PATH = 128; // длиннее пути в корректном дереве с int-счетчиком узлов не бывает
+    private static final int OPTIMISTIC_ATTEMPTS = 3; // после стольких неудачных проверок читаем под readLock
+
+    private final SearchTree tree;
+    private final StampedLock lock = new StampedLock();
+
+    // счетчики пишут все потоки сразу - LongAdder вместо int, чтобы не биться за одну ячейку
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder optimisticMisses = new LongAdder(); // чтения, которые пришлось повторить
+    private final LongAdder rotations = new LongAdder();
+
+    private final ThreadLocal<int[]> pathBuffer = ThreadLocal.withInitial(() -> new int[MAX_PATH]);
+
+    public ConcurrentTree(SearchTree tree) { // дерево дальше нельзя трогать напрямую, только через обертку
+        this.tree = tree;
+    }
+
+    private static final class ReadAborted extends RuntimeException { // чтение наткнулось на дерево посреди поворота
+        private static final long serialVersionUID = 1L;
+
+        ReadAborted() {
+            super(null, null, false, false); // без стека - бросается на горячем пути
+        }
+    }
+
+    private static final ReadAborted ABORT = new ReadAborted();
+
+    private static final int VALIDATE_EVERY = 1024; // ключей между проверками штампа посреди длинного диапазона
+
+    private static final class RangeCollector implements IntConsumer { // буфер ключей диапазона до проверки штампа
+        int[] keys = new int[16];
+        int size;
+        StampedLock lock;
+        long stamp; // 0 - читаем под readLock, проверять нечего
+
+        public void accept(int key) {
+            if (stamp != 0 && (size + 1) % VALIDATE_EVERY == 0 && !lock.validate(stamp)) throw ABORT; // запись уже была - дальше копить незачем
+            if (size == keys.length) keys = Arrays.copyOf(keys, size * 2);
+            keys[size++] = key;
+        }
+    }
+
+    // ---------- чтение: оптимистично, с проверкой штампа и повтором ----------
+
+    public boolean contains(int key) {
+        reads.increment();
+        int[] path = pathBuffer.get();
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp == 0) break; // идет запись
+            try {
+                int len = tree.tracePath(key, path);
+                if (len >= 0 && lock.validate(stamp)) return len > 0;
+            } catch (RuntimeException e) { // прочитали недостроенный узел - результат все равно отбрасывается
+            }
+            optimisticMisses.increment();
+        }
+        long stamp = lock.readLock();
+        try {
+            return tree.contains(key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public List<Integer> findPath(int key) {
+        reads.increment();
+        int[] path = pathBuffer.get();
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp == 0) break;
+            try {
+                int len = tree.tracePath(key, path);
+                if (len >= 0 && lock.validate(stamp)) {
+                    List<Integer> result = new ArrayList<>(len); // как findPath дерева: пустой список, если ключа нет
+                    for (int i = 0; i < len; i++) result.add(path[i]);
+                    return result;
+                }
+            } catch (RuntimeException e) {
+            }
+            optimisticMisses.increment();
+        }
+        long stamp = lock.readLock();
+        try {
+            return tree.findPath(key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void forEachInRange(int lo, int hi, IntConsumer action) { // action вызывается вне блокировок
+        reads.increment();
+        RangeCollector collected = new RangeCollector();
+        boolean done = false;
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS && !done; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp == 0) break;
+            collected.size = 0;
+            collected.lock = lock;
+            collected.stamp = stamp;
+            try {
+                done = tree.traceRange(lo, hi, collected, maxSteps()) >= 0 && lock.validate(stamp);
+            } catch (RuntimeException e) {
+            }
+            if (!done) optimisticMisses.increment();
+        }
+        if (!done) {
+            long stamp = lock.readLock();
+            try {
+                collected.size = 0;
+                collected.stamp = 0;
+                tree.forEachInRange(lo, hi, collected);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        for (int i = 0; i < collected.size; i++) action.accept(collected.keys[i]);
+    }
+
+    public int countInRange(int lo, int hi) {
+        reads.increment();
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp == 0) break;
+            try {
+                int count = tree.traceCount(lo, hi, maxSteps());
+                if (count >= 0 && lock.validate(stamp)) return count;
+            } catch (RuntimeException e) {
+            }
+            optimisticMisses.increment();
+        }
+        long stamp = lock.readLock();
+        try {
+            return tree.countInRange(lo, hi);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int maxSteps() { // обход по порядку проходит каждое ребро не больше двух раз плюс спуск - больше шагов только у разорванного дерева
+        return (int) Math.min(Integer.MAX_VALUE, 2L * tree.getNodeCount() + 2 * MAX_PATH);
+    }
+
+    public TreeStats getStats() {
+        long stamp = lock.readLock(); // статистика читается редко - без оптимистичного режима
+        try {
+            return tree.getStats();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int getNodeCount() {
+        long stamp = lock.tryOptimisticRead();
+        int count = tree.getNodeCount(); // одно int-поле - читается атомарно
+        if (lock.validate(stamp)) return count;
+        stamp = lock.readLock();
+        try {
+            return tree.getNodeCount();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // ---------- запись: один писатель за раз ----------
+
+    public void insert(int key) {
+        long stamp = lock.writeLock();
+        try {
+            int before = tree.getRotations();
+            tree.insert(key);
+            rotations.add(tree.getRotations() - before);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        writes.increment();
+    }
+
+    public void delete(int key) {
+        long stamp = lock.writeLock();
+        try {
+            int before = tree.getRotations();
+            tree.delete(key);
+            rotations.add(tree.getRotations() - before);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        writes.increment();
+    }
+
+    public void insertAll(int[] keys) {
+        long stamp = lock.writeLock();
+        try {
+            int before = tree.getRotations();
+            tree.insertAll(keys);
+            rotations.add(tree.getRotations() - before);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        writes.increment();
+    }
+
+    public void deleteAll(int[] keys) {
+        long stamp = lock.writeLock();
+        try {
+            int before = tree.getRotations();
+            tree.deleteAll(keys);
+            rotations.add(tree.getRotations() - before);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        writes.increment();
+    }
+
+    public long getReadCount() {return reads.sum();}
+    public long getWriteCount() {return writes.sum();}
+    public long getOptimisticMisses() {return optimisticMisses.sum();}
+    public long getRotations() {return rotations.sum();}
+}
@@ -0,0 +1,16 @@
+import java.util.function.IntConsumer;
+
+public interface IntTree { // общее у всех четырех деревьев, и на узлах, и на массивах - по нему один замеряемый цикл TreeCompare
+
+    void insert(int key);
+    void delete(int key);
+    boolean contains(int key);
+
+    void forEachInRange(int lo, int hi, IntConsumer action);
+    int countInRange(int lo, int hi);
+
+    int getHeight(); // O(1) у всех четырех: высота хранится в корне - TreeCompare читает ее на каждом образце
+    int getNodeCount();
+    int getRotations();
+    void resetRotations();
+}
@@ -0,0 +1,61 @@
+public class LatencyHistogram { // гистограмма задержек (нс) с логарифмическими корзинами, как в HdrHistogram
+
+    // значения < 128 считаются точно, дальше каждая степень двойки делится на 64 корзины - ошибка не больше ~1.6%
+    private static final int SUB_BITS = 6;
+    private static final int SUB = 1 << SUB_BITS; // 64
+    private static final int LINEAR = SUB * 2; // 128
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB; // хватает на любой положительный long
+
+    private final long[] counts = new long[BUCKETS];
+    private long total;
+    private long max;
+
+    public void record(long value) { // O(1), без выделения памяти - можно звать на каждую операцию
+        if (value < 0) value = 0;
+        counts[index(value)]++;
+        total++;
+        if (value > max) max = value;
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) counts[i] += other.counts[i];
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    private static int index(long v) {
+        if (v < LINEAR) return (int) v;
+        int e = 63 - Long.numberOfLeadingZeros(v); // старший бит, >= 7
+        return (e - SUB_BITS) * SUB + (int) (v >>> (e - SUB_BITS)); // старшие 7 бит значения внутри своей степени двойки
+    }
+
+    private static long valueOf(int index) { // середина корзины
+        if (index < LINEAR) return index;
+        int shift = index / SUB - 1; // e - SUB_BITS
+        long low = (long) (index % SUB + SUB) << shift;
+        return low + ((1L << shift) >> 1);
+    }
+
+    public long getCount() {return total;}
+    public long getMax() {return max;}
+
+    public long percentile(double p) { // nearest-rank, p в процентах; 0 для пустой гистограммы
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(valueOf(i), max); // середина верхней корзины не должна превышать max
+        }
+        return max;
+    }
+
+    public double getMean() {
+        if (total == 0) return 0;
+        double sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] != 0) sum += (double) counts[i] * valueOf(i);
+        }
+        return sum / total;
+    }
+}
@@ -1,15 +1,32 @@
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
 
 public class Main extends Application {
 
     private RedBlackTree rbt = new RedBlackTree();
-    private AVLTree avl = new AVLTree();
+    private AVLTree avl = new AVLTree(false, true); // со снимками - холст рисует avl.snapshot()
 
     private TreeCanvas rbtCanvas;
     private TreeCanvas avlCanvas;
@@ -19,6 +36,18 @@ public class Main extends Application {
 
     private TreeCompare comparator = new TreeCompare();
 
+    private VBox compareControls; // кнопки тестов, выключены пока идет тест
+    private ProgressBar compareProgress;
+    private Button cancelBtn;
+    private Task<?> running; // текущий тест сравнения, одновременно не больше одного
+
+    private static final int CHART_POINTS = 300; // точек на серию, старые выкидываются
+    private final TreeCompare.SampleChannel samples = new TreeCompare.SampleChannel(4096);
+    private final List<TreeCompare.Sample> drained = new ArrayList<>();
+    private final List<XYChart.Series<Number, Number>> series = new ArrayList<>(); // по 2 на график: RBT, AVL
+    private final long[] chartOps = new long[2]; // ось X - операций с начала теста отдельно у RBT и AVL
+    private Timeline chartTimer; // раз в 250 мс забирает образцы - графики не дергаются на каждые 10k операций
+
     public static void main(String[] args) { // точка входа
         launch();
 
@@ -39,6 +68,11 @@ public class Main extends Application {
         tabCompare.setClosable(false);
 
         tabs.getTabs().addAll(tabRBT, tabAVL, tabCompare);
+        // скрытая вкладка дерево не перестраивает и не рисует - догоняет все изменения, когда ее откроют
+        tabRBT.selectedProperty().addListener((obs, was, is) -> rbtCanvas.setShown(is));
+        tabAVL.selectedProperty().addListener((obs, was, is) -> avlCanvas.setShown(is));
+        rbtCanvas.setShown(tabRBT.isSelected());
+        avlCanvas.setShown(tabAVL.isSelected());
 
         Scene scene = new Scene(tabs, 1100, 700);
         stage.setScene(scene);
@@ -58,7 +92,8 @@ public class Main extends Application {
         Button deleteBtn = new Button("Удалить");
         Button searchBtn = new Button("Найти");
         Button clearBtn = new Button("Очистить");
-        HBox controls = new HBox(8, new Label("Значение:"), input, insertBtn, deleteBtn, searchBtn, clearBtn);
+        Button randomBtn = new Button("Добавить N случайных"); // большое дерево - смотреть колесом мыши и перетаскиванием
+        HBox controls = new HBox(8, new Label("Значение:"), input, insertBtn, deleteBtn, searchBtn, clearBtn, randomBtn);
         controls.setPadding(new Insets(8));
 
         // обработчики событий
@@ -99,6 +134,17 @@ public class Main extends Application {
             redrawAll();
         });
 
+        randomBtn.setOnAction(e -> {
+            try {
+                int n = Integer.parseInt(input.getText().trim());
+                Random rnd = new Random();
+                int[] keys = new int[Math.max(0, n)];
+                for (int i = 0; i < keys.length; i++) keys[i] = rnd.nextInt(Math.max(1000, n * 10));
+                rbt.insertAll(keys); // одной партией - на миллионе ключей заметно быстрее insert по одному
+                redrawAll();
+            } catch (NumberFormatException ex) { showAlert("Введите количество ключей"); }
+        });
+
         VBox top = new VBox(4, controls, rbtInfo);
         root.setTop(top);
         root.setCenter(rbtCanvas);
@@ -117,7 +163,8 @@ public class Main extends Application {
         Button deleteBtn = new Button("Удалить");
         Button searchBtn = new Button("Найти");
         Button clearBtn = new Button("Очистить");
-        HBox controls = new HBox(8, new Label("Значение:"), input, insertBtn, deleteBtn, searchBtn, clearBtn);
+        Button randomBtn = new Button("Добавить N случайных"); // большое дерево - смотреть колесом мыши и перетаскиванием
+        HBox controls = new HBox(8, new Label("Значение:"), input, insertBtn, deleteBtn, searchBtn, clearBtn, randomBtn);
         controls.setPadding(new Insets(8));
 
         insertBtn.setOnAction(e -> {
@@ -154,10 +201,21 @@ public class Main extends Application {
         });
 
         clearBtn.setOnAction(e -> {
-            avl = new AVLTree();
+            avl = new AVLTree(false, true);
             redrawAll();
         });
 
+        randomBtn.setOnAction(e -> {
+            try {
+                int n = Integer.parseInt(input.getText().trim());
+                Random rnd = new Random();
+                int[] keys = new int[Math.max(0, n)];
+                for (int i = 0; i < keys.length; i++) keys[i] = rnd.nextInt(Math.max(1000, n * 10));
+                avl.insertAll(keys); // одной партией - на миллионе ключей заметно быстрее insert по одному
+                redrawAll();
+            } catch (NumberFormatException ex) { showAlert("Введите количество ключей"); }
+        });
+
         VBox top = new VBox(4, controls, avlInfo);
         root.setTop(top);
         root.setCenter(avlCanvas);
@@ -177,6 +235,23 @@ public class Main extends Application {
 
         Button runInsertBtn = new Button("Запуск теста производительности вставки");
         Button runMixedBtn = new Button("Запуск теста смешанных операций");
+        Button runBatchBtn = new Button("Запуск теста пакетной вставки");
+        Button runAugmentBtn = new Button("Запуск теста порядковой статистики");
+        Button runConcurrentBtn = new Button("Запуск многопоточного теста");
+        Button runJournalBtn = new Button("Запуск теста журнала");
+        TextField batchField = new TextField("1000"); // размер партии для insertAll
+        batchField.setPrefWidth(80);
+        ChoiceBox<Workload.Pattern> patternBox = new ChoiceBox<>(); // как генерируются ключи для тестов вставки и смешанных операций
+        patternBox.getItems().addAll(Workload.Pattern.values());
+        patternBox.setValue(Workload.Pattern.UNIFORM);
+        TextField skewField = new TextField("1.0"); // параметр Ципфа
+        skewField.setPrefWidth(50);
+        TextField seedField = new TextField("42"); // одинаковый seed - одинаковый поток операций
+        seedField.setPrefWidth(80);
+        Button runTraceBtn = new Button("Запуск по трассе...");
+        CheckBox parallelBox = new CheckBox("Повторы параллельно"); // по потоку на ядро; цифры шумнее, зато серия в разы быстрее
+        parallelBox.selectedProperty().addListener((obs, was, on) ->
+                comparator.setWorkers(on ? Runtime.getRuntime().availableProcessors() : 1)); // во время теста флажок выключен вместе с кнопками
         TextArea out = new TextArea(); // вывод результатов
         out.setEditable(false);
         out.setPrefRowCount(20);
@@ -185,79 +260,296 @@ public class Main extends Application {
             int N;
             try {
                 N = Integer.parseInt(nField.getText().trim());
-                if (N > 10000) {
-                    if (!showConfirmAlert("N > 10000 может занять много времени. Продолжить?")) {
-                        return;
-                    }
-                }
             } catch (NumberFormatException ex) {
                 showAlert("Введите корректное N");
                 return;
             }
             int rep = repeats.getValue();
+            Callable<Workload> gen = makeWorkload(patternBox, skewField, seedField, 0, N, Workload.OpMix.INSERT_ONLY);
+            if (gen == null) return;
             out.clear();
             out.appendText("Тест производительности вставки\n");
 
-            TreeCompare.ComparisonResult result = comparator.compareInsert(N, rep);
-
-            out.appendText("Повторений: " + rep + ", N=" + N + "\n");
-            out.appendText(String.format("Среднее время вставки RBT (мс)= %.3f\n", result.rbtTime));
-            out.appendText(String.format("Среднее время вставки AVL (мс)= %.3f\n", result.avlTime));
-            out.appendText(String.format("Среднее кол-во поворотов RBT= %.1f\n", result.rbtRotations));
-            out.appendText(String.format("Среднее кол-во поворотов AVL= %.1f\n", result.avlRotations));
-            out.appendText(String.format("Средняя высота RBT= %.1f\n", result.rbtHeight));
-            out.appendText(String.format("Средняя высота AVL= %.1f\n", result.avlHeight));
-            out.appendText(String.format("Соотношение времени (AVL/RBT)= %.3f\n", result.timeRatio));
+            runTask(out, () -> {
+                Workload w = gen.call();
+                return new Object[] {w, comparator.compareInsert(w, rep)};
+            }, res -> {
+                Workload w = (Workload) res[0];
+                TreeCompare.ComparisonResult result = (TreeCompare.ComparisonResult) res[1];
+                out.appendText("Повторений: " + rep + ", N=" + N + ", поток: " + w.name + "\n");
+                out.appendText(String.format("Среднее время вставки RBT (мс)= %.3f\n", result.rbtTime));
+                out.appendText(String.format("Среднее время вставки AVL (мс)= %.3f\n", result.avlTime));
+                out.appendText(String.format("Среднее кол-во поворотов RBT= %.1f\n", result.rbtRotations));
+                out.appendText(String.format("Среднее кол-во поворотов AVL= %.1f\n", result.avlRotations));
+                out.appendText(String.format("Средняя высота RBT= %.1f\n", result.rbtHeight));
+                out.appendText(String.format("Средняя высота AVL= %.1f\n", result.avlHeight));
+                out.appendText(String.format("Соотношение времени (AVL/RBT)= %.3f\n", result.timeRatio));
+                appendLatency(out, result);
+                appendMemory(out, result);
+            });
         });
 
         runMixedBtn.setOnAction(e -> {
             int N;
             try {
                 N = Integer.parseInt(nField.getText().trim());
-                if (N > 10000) {
-                    if (!showConfirmAlert("N > 10000 может занять много времени. Продолжить?")) {
-                        return;
-                    }
-                }
             } catch (NumberFormatException ex) {
                 showAlert("Введите корректное N");
                 return;
             }
             int rep = repeats.getValue();
+            Callable<Workload> gen = makeWorkload(patternBox, skewField, seedField, N / 2, N, Workload.OpMix.MIXED);
+            if (gen == null) return;
             out.clear();
             out.appendText("Сравнение смешанных операций \n");
             out.appendText("Операции: 40% вставка, 30% удаление, 30% поиск\n");
 
-            TreeCompare.ComparisonResult result = comparator.compareMixedOperations(N, rep);
+            runTask(out, () -> {
+                Workload w = gen.call();
+                return new Object[] {w, comparator.compareMixedOperations(w, rep)};
+            }, res -> {
+                Workload w = (Workload) res[0];
+                TreeCompare.ComparisonResult result = (TreeCompare.ComparisonResult) res[1];
+                out.appendText("Повторений: " + rep + ", Кол-во узлов: " + N + ", поток: " + w.name + "\n");
+                out.appendText(String.format("Общее среднее время RBT (мс)= %.3f\n", result.rbtTime));
+                out.appendText(String.format("Общее среднее время AVL (мс)= %.3f\n", result.avlTime));
+                out.appendText(String.format("Среднее кол-во поворотов RBT= %.1f\n", result.rbtRotations));
+                out.appendText(String.format("Среднее кол-во поворотов AVL= %.1f\n", result.avlRotations));
+                out.appendText(String.format("Средняя высота RBT= %.1f\n", result.rbtHeight));
+                out.appendText(String.format("Средняя высота AVL= %.1f\n", result.avlHeight));
+                out.appendText(String.format("Соотношение времени (AVL/RBT)= %.3f\n", result.timeRatio));
+                appendLatency(out, result);
+                appendMemory(out, result);
+            });
+        });
+
+        runBatchBtn.setOnAction(e -> {
+            int N, batchSize;
+            try {
+                N = Integer.parseInt(nField.getText().trim());
+                batchSize = Integer.parseInt(batchField.getText().trim());
+                if (batchSize < 1) throw new NumberFormatException();
+            } catch (NumberFormatException ex) {
+                showAlert("Введите корректные N и размер партии");
+                return;
+            }
+            int rep = repeats.getValue();
+            out.clear();
+            out.appendText("Тест пакетной вставки (insert по одному ключу / insertAll)\n");
+
+            runTask(out, () -> comparator.compareBatchInsert(N, rep, batchSize), result -> {
+                out.appendText("Повторений: " + rep + ", N=" + N + ", размер партии=" + batchSize + "\n");
+                out.appendText(String.format("Среднее время RBT (мс): по одному= %.3f, партиями= %.3f, ускорение= %.2f\n",
+                        result.perKey.rbtTime, result.batched.rbtTime, result.rbtSpeedup));
+                out.appendText(String.format("Среднее время AVL (мс): по одному= %.3f, партиями= %.3f, ускорение= %.2f\n",
+                        result.perKey.avlTime, result.batched.avlTime, result.avlSpeedup));
+                out.appendText(String.format("Среднее кол-во поворотов RBT: по одному= %.1f, партиями= %.1f\n",
+                        result.perKey.rbtRotations, result.batched.rbtRotations));
+                out.appendText(String.format("Среднее кол-во поворотов AVL: по одному= %.1f, партиями= %.1f\n",
+                        result.perKey.avlRotations, result.batched.avlRotations));
+                out.appendText(String.format("Средняя высота RBT: по одному= %.1f, партиями= %.1f\n",
+                        result.perKey.rbtHeight, result.batched.rbtHeight));
+                out.appendText(String.format("Средняя высота AVL: по одному= %.1f, партиями= %.1f\n",
+                        result.perKey.avlHeight, result.batched.avlHeight));
+            });
+        });
+
+        runAugmentBtn.setOnAction(e -> {
+            int N;
+            try {
+                N = Integer.parseInt(nField.getText().trim());
+            } catch (NumberFormatException ex) {
+                showAlert("Введите корректное N");
+                return;
+            }
+            int rep = repeats.getValue();
+            out.clear();
+            out.appendText("Цена порядковой статистики (размеры поддеревьев для rank/select)\n");
+            out.appendText("Операции: вставка N ключей, затем удаление половины\n");
+
+            runTask(out, () -> comparator.compareAugmentation(N, rep), result -> {
+                out.appendText("Повторений: " + rep + ", N=" + N + "\n");
+                out.appendText(String.format("Среднее время RBT (мс): без размеров= %.3f, с размерами= %.3f, замедление= %.1f%%\n",
+                        result.rbtPlainTime, result.rbtAugmentedTime, result.rbtOverhead));
+                out.appendText(String.format("Среднее время AVL (мс): без размеров= %.3f, с размерами= %.3f, замедление= %.1f%%\n",
+                        result.avlPlainTime, result.avlAugmentedTime, result.avlOverhead));
+            });
+        });
+
+        runConcurrentBtn.setOnAction(e -> {
+            int N;
+            try {
+                N = Integer.parseInt(nField.getText().trim());
+            } catch (NumberFormatException ex) {
+                showAlert("Введите корректное N");
+                return;
+            }
+            int cores = Runtime.getRuntime().availableProcessors();
+            out.clear();
+            out.appendText("Многопоточное чтение (ConcurrentTree, StampedLock) и шарды (ShardedTree, по шарду на поток)\n");
+            out.appendText("Операции: 99% поиск, 1% вставка/удаление, по 200000 на поток\n");
+            out.appendText("Узлов: " + N + ", ядер: " + cores + "\n");
+
+            // строки по числу потоков приходят через прогресс - итог отдельно не печатаем
+            runTask(out, () -> comparator.compareConcurrentReads(N, cores, 200_000, 1), result -> {});
+        });
+
+        runJournalBtn.setOnAction(e -> {
+            int N;
+            try {
+                N = Integer.parseInt(nField.getText().trim());
+            } catch (NumberFormatException ex) {
+                showAlert("Введите корректное N");
+                return;
+            }
+            int rep = repeats.getValue();
+            out.clear();
+            out.appendText("Журнал изменений (TreeJournal): OFF - без журнала, ASYNC - без fsync, GROUP - fsync партиями\n");
+            out.appendText("Операции: вставка N ключей, затем удаление половины\n");
+
+            runTask(out, () -> comparator.compareJournal(N, rep), result -> {
+                out.appendText("Повторений: " + rep + ", N=" + N + "\n");
+                for (int i = 0; i < result.modes.length; i++) {
+                    out.appendText(String.format("%s: RBT (тыс. оп/с)= %.1f, AVL (тыс. оп/с)= %.1f\n",
+                            result.modes[i], result.rbtOpsPerSec[i] / 1e3, result.avlOpsPerSec[i] / 1e3));
+                }
+            });
+        });
+
+        runTraceBtn.setOnAction(e -> { // операции из файла трассы (формат - Workload.fromTrace)
+            FileChooser chooser = new FileChooser();
+            chooser.setTitle("Файл трассы операций");
+            File file = chooser.showOpenDialog(root.getScene().getWindow());
+            if (file == null) return;
+            int rep = repeats.getValue();
+            out.clear();
+            out.appendText("Повтор трассы: " + file.getName() + "\n");
+
+            runTask(out, () -> { // большой файл трассы тоже читается в фоне
+                Workload w = Workload.fromTrace(file.toPath());
+                return new Object[] {w, comparator.compareWorkload(w, rep)};
+            }, res -> {
+                Workload w = (Workload) res[0];
+                TreeCompare.ComparisonResult result = (TreeCompare.ComparisonResult) res[1];
+                out.appendText("Повторений: " + rep + ", начальных ключей: " + w.initial.length + ", операций: " + w.size() + "\n");
+                out.appendText(String.format("Общее среднее время RBT (мс)= %.3f\n", result.rbtTime));
+                out.appendText(String.format("Общее среднее время AVL (мс)= %.3f\n", result.avlTime));
+                out.appendText(String.format("Среднее кол-во поворотов RBT= %.1f\n", result.rbtRotations));
+                out.appendText(String.format("Среднее кол-во поворотов AVL= %.1f\n", result.avlRotations));
+                out.appendText(String.format("Средняя высота RBT= %.1f\n", result.rbtHeight));
+                out.appendText(String.format("Средняя высота AVL= %.1f\n", result.avlHeight));
+                out.appendText(String.format("Соотношение времени (AVL/RBT)= %.3f\n", result.timeRatio));
+                appendLatency(out, result);
+                appendMemory(out, result);
+            });
+        });
 
-            out.appendText("Повторений: " + rep + ", Кол-во узлов: " + N + "\n");
-            out.appendText(String.format("Общее среднее время RBT (мс)= %.3f\n", result.rbtTime));
-            out.appendText(String.format("Общее среднее время AVL (мс)= %.3f\n", result.avlTime));
-            out.appendText(String.format("Среднее кол-во поворотов RBT= %.1f\n", result.rbtRotations));
-            out.appendText(String.format("Среднее кол-во поворотов AVL= %.1f\n", result.avlRotations));
-            out.appendText(String.format("Средняя высота RBT= %.1f\n", result.rbtHeight));
-            out.appendText(String.format("Средняя высота AVL= %.1f\n", result.avlHeight));
-            out.appendText(String.format("Соотношение времени (AVL/RBT)= %.3f\n", result.timeRatio));
+        cancelBtn = new Button("Отмена");
+        cancelBtn.setDisable(true);
+        cancelBtn.setOnAction(e -> {
+            if (running != null) running.cancel(); // прерывает поток - тест остановится после текущего замера
         });
+        compareProgress = new ProgressBar(0); // не -1: бегающая полоса перерисовывалась бы во время замеров
+        compareProgress.setPrefWidth(300);
 
         HBox controls = new HBox(8,
                 new Label("Количество узлов N:"), nField,
-                new Label("Повторений:"), repeats);
-        HBox buttons = new HBox(8, runInsertBtn, runMixedBtn);
-        VBox controlBox = new VBox(8, controls, buttons);
-        root.getChildren().addAll(controlBox, out);
+                new Label("Повторений:"), repeats,
+                new Label("Размер партии:"), batchField, parallelBox);
+        HBox workloadBox = new HBox(8,
+                new Label("Поток ключей:"), patternBox,
+                new Label("skew:"), skewField,
+                new Label("seed:"), seedField, runTraceBtn);
+        HBox buttons = new HBox(8, runInsertBtn, runMixedBtn, runBatchBtn, runAugmentBtn, runConcurrentBtn, runJournalBtn);
+        compareControls = new VBox(8, controls, workloadBox, buttons);
+        HBox progressBox = new HBox(8, compareProgress, cancelBtn);
+        out.setPrefRowCount(12);
+        root.getChildren().addAll(compareControls, progressBox, createCharts(), out);
         return root;
     }
 
+    private GridPane createCharts() { // живые графики по ходу теста; образцы дает TreeCompare каждые SAMPLE_EVERY операций
+        GridPane grid = new GridPane();
+        grid.setHgap(8);
+        grid.setVgap(8);
+        grid.add(createChart("Операций/с"), 0, 0);
+        grid.add(createChart("Поворотов на операцию"), 1, 0);
+        grid.add(createChart("Высота"), 0, 1);
+        grid.add(createChart("Паузы GC, мс"), 1, 1);
+        ColumnConstraints half = new ColumnConstraints();
+        half.setPercentWidth(50);
+        grid.getColumnConstraints().addAll(half, half);
+
+        comparator.setSamples(samples);
+        chartTimer = new Timeline(new KeyFrame(Duration.millis(250), e -> drainSamples()));
+        chartTimer.setCycleCount(Timeline.INDEFINITE);
+        return grid;
+    }
+
+    private LineChart<Number, Number> createChart(String title) {
+        NumberAxis x = new NumberAxis();
+        x.setLabel("операций");
+        x.setForceZeroInRange(false); // старые точки выкидываются - ось едет за данными
+        NumberAxis y = new NumberAxis();
+        LineChart<Number, Number> chart = new LineChart<>(x, y);
+        chart.setTitle(title);
+        chart.setAnimated(false); // анимация на каждую точку съела бы UI
+        chart.setCreateSymbols(false);
+        chart.setPrefHeight(180);
+        XYChart.Series<Number, Number> r = new XYChart.Series<>();
+        r.setName("RBT");
+        XYChart.Series<Number, Number> a = new XYChart.Series<>();
+        a.setName("AVL");
+        chart.getData().add(r);
+        chart.getData().add(a);
+        series.add(r);
+        series.add(a);
+        return chart;
+    }
+
+    private void clearCharts() {
+        samples.drain(drained); // хвост прошлого теста
+        drained.clear();
+        for (XYChart.Series<Number, Number> s : series) s.getData().clear();
+        chartOps[0] = chartOps[1] = 0;
+    }
+
+    private void drainSamples() { // только в UI-потоке; точки копятся в списки и добавляются пачкой на серию
+        if (samples.drain(drained) == 0) return;
+        List<List<XYChart.Data<Number, Number>>> add = new ArrayList<>();
+        for (int i = 0; i < series.size(); i++) add.add(new ArrayList<>());
+        for (TreeCompare.Sample s : drained) {
+            int t = s.rbt ? 0 : 1;
+            long x = chartOps[t] += s.intervalOps;
+            add.get(t).add(new XYChart.Data<>(x, s.opsPerSec()));
+            add.get(2 + t).add(new XYChart.Data<>(x, s.rotationsPerOp()));
+            add.get(4 + t).add(new XYChart.Data<>(x, s.height));
+            add.get(6 + t).add(new XYChart.Data<>(x, s.gcPauseMs)); // сборщик общий - пауза попадает в интервал того дерева, которое в это время мерилось
+        }
+        drained.clear();
+        for (int i = 0; i < series.size(); i++) {
+            ObservableList<XYChart.Data<Number, Number>> data = series.get(i).getData();
+            List<XYChart.Data<Number, Number>> pts = add.get(i);
+            if (pts.size() > CHART_POINTS) pts = pts.subList(pts.size() - CHART_POINTS, pts.size());
+            int extra = data.size() + pts.size() - CHART_POINTS;
+            if (extra > 0) data.remove(0, extra);
+            data.addAll(pts);
+        }
+    }
+
     private void redrawAll() { // обновляет все визуальные компоненты
         try {
-            rbtCanvas.setTreeData(rbt);
-            avlCanvas.setTreeData(avl);
-
-            rbtInfo.setText(String.format("Узлов: %d, Высота: %d, Поворотов: %d",
-                    rbt.getNodeCount(), rbt.getHeight(), rbt.getRotations()));
-            avlInfo.setText(String.format("Узлов: %d, Высота: %d, Поворотов: %d",
-                    avl.getNodeCount(), avl.getHeight(), avl.getRotations()));
+            rbtCanvas.setTreeData(rbt); // после одной вставки/удаления холст переложит только поменявшееся поддерево
+            avlCanvas.setTreeData(avl.snapshot()); // снимок за O(1) - холст держит именно эту версию, даже если avl дальше меняется
+
+            TreeStats rs = rbt.getStats(); // статистика хранится в деревьях, обхода узлов нет
+            TreeStats as = avl.getStats();
+            rbtInfo.setText(String.format("Узлов: %d, Высота: %d, Черная высота: %d, Поворотов: %d (одинарных: %d, двойных: %d; при вставке: %d, при удалении: %d)",
+                    rs.nodeCount, rs.height, rs.blackHeight, rs.rotations,
+                    rs.singleRotations, rs.doubleRotations, rs.insertRotations, rs.deleteRotations));
+            avlInfo.setText(String.format("Узлов: %d, Высота: %d, Поворотов: %d (одинарных: %d, двойных: %d; при вставке: %d, при удалении: %d)",
+                    as.nodeCount, as.height, as.rotations,
+                    as.singleRotations, as.doubleRotations, as.insertRotations, as.deleteRotations));
         } catch (Exception e) {
             Alert a = new Alert(Alert.AlertType.ERROR);
             a.setHeaderText("Ошибка при рисовании");
@@ -266,13 +558,110 @@ public class Main extends Application {
         }
     }
 
+    private <T> void runTask(TextArea out, Callable<T> work, Consumer<T> done) { // тест в фоновом потоке, UI не замирает
+        Task<T> task = new Task<T>() {
+            @Override
+            protected T call() throws Exception {
+                updateProgress(0, 1);
+                comparator.setProgress((step, total, text) -> { // повтор закончился - строка сразу в out
+                    updateProgress(step, total);
+                    CountDownLatch shown = new CountDownLatch(1);
+                    Platform.runLater(() -> {
+                        out.appendText(text + "\n");
+                        shown.countDown();
+                    });
+                    try {
+                        shown.await(); // ждем, пока UI примет строку, - обновления не копятся и не разбираются посреди следующего замера
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt(); // отмена - TreeCompare увидит флаг сам
+                    }
+                });
+                try {
+                    return work.call();
+                } finally {
+                    comparator.setProgress(null);
+                    Platform.runLater(() -> finishTask()); // кнопки включаются только когда поток реально закончил
+                }
+            }
+        };
+        task.setOnSucceeded(e -> done.accept(task.getValue()));
+        task.setOnCancelled(e -> out.appendText("Тест отменен\n"));
+        task.setOnFailed(e -> {
+            Throwable ex = task.getException();
+            if (ex instanceof OutOfMemoryError) showAlert("Не хватило памяти - уменьшите N или увеличьте -Xmx");
+            else showAlert("Ошибка теста: " + ex.getMessage());
+        });
+
+        running = task;
+        clearCharts();
+        chartTimer.play();
+        compareControls.setDisable(true);
+        cancelBtn.setDisable(false);
+        compareProgress.progressProperty().bind(task.progressProperty());
+        Thread t = new Thread(task, "tree-compare");
+        t.setDaemon(true); // закрытие окна не ждет теста
+        t.start();
+    }
+
+    private void finishTask() {
+        running = null;
+        chartTimer.stop();
+        drainSamples(); // последние образцы, пришедшие после шага таймера
+        compareProgress.progressProperty().unbind();
+        compareControls.setDisable(false);
+        cancelBtn.setDisable(true);
+    }
+
+    private Callable<Workload> makeWorkload(ChoiceBox<Workload.Pattern> patternBox, TextField skewField, TextField seedField,
+                                            int initial, int N, Workload.OpMix mix) { // null, если skew или seed введены неверно; генерация - уже в фоне
+        double skew;
+        long seed;
+        try {
+            skew = Double.parseDouble(skewField.getText().trim());
+            seed = Long.parseLong(seedField.getText().trim());
+        } catch (NumberFormatException ex) {
+            showAlert("Введите корректные skew и seed");
+            return null;
+        }
+        if (skew <= 0) {
+            showAlert("skew должен быть больше 0");
+            return null;
+        }
+        Workload.Pattern pattern = patternBox.getValue();
+        return () -> Workload.generate(pattern, skew, 1_000_000, initial, N, mix, seed);
+    }
+
+    private void appendLatency(TextArea out, TreeCompare.ComparisonResult result) { // перцентили задержек по видам операций
+        out.appendText(String.format("Задержки одной операции, нс (поправка на замер %d нс):\n", TreeCompare.timerOverhead()));
+        appendLatency(out, "RBT", result.rbtLatency);
+        appendLatency(out, "AVL", result.avlLatency);
+    }
+
+    private void appendMemory(TextArea out, TreeCompare.ComparisonResult result) { // для выбора размера кучи
+        out.appendText("Память (выделения - счетчик потока, сборки - GC MXBean за замеряемое окно):\n");
+        appendMemory(out, "RBT", result.rbtMemory);
+        appendMemory(out, "AVL", result.avlMemory);
+    }
+
+    private void appendMemory(TextArea out, String tree, TreeCompare.Memory m) {
+        out.appendText(String.format("%s: выделено %.1f байт/оп, живая куча %.1f байт/узел, сборок мусора %.1f, их время %.1f мс\n",
+                tree, m.bytesPerOp, m.retainedPerNode, m.gcCount, m.gcPauseMs));
+    }
+
+    private void appendLatency(TextArea out, String tree, TreeCompare.Latency lat) {
+        appendLatency(out, tree + " вставка", lat.insert);
+        appendLatency(out, tree + " удаление", lat.delete);
+        appendLatency(out, tree + " поиск", lat.contains);
+    }
+
+    private void appendLatency(TextArea out, String name, LatencyHistogram h) {
+        if (h.getCount() == 0) return;
+        out.appendText(String.format("%s: p50= %d, p90= %d, p99= %d, p99.9= %d, max= %d\n", name,
+                h.percentile(50), h.percentile(90), h.percentile(99), h.percentile(99.9), h.getMax()));
+    }
+
     private void showAlert(String msg) { // информационное сообщ
         Alert a = new Alert(Alert.AlertType.INFORMATION, msg, ButtonType.OK);
         a.showAndWait();
     }
-
-    private boolean showConfirmAlert(String msg) { // сообщ подтверждения
-        Alert a = new Alert(Alert.AlertType.CONFIRMATION, msg, ButtonType.YES, ButtonType.NO);
-        return a.showAndWait().orElse(ButtonType.NO) == ButtonType.YES;
-    }
 }
\ No newline at end of file
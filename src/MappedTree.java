@@ -0,0 +1,99 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.OptionalInt;
+import java.util.function.IntConsumer;
+
+public final class MappedTree { // снимок AVLTree/RedBlackTree только для чтения: запросы прямо по отображенному файлу, без Node
+
+    private static final int CHUNK_SHIFT = 28; // ключей в одном окне TreeFile.CHUNK
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    private final MappedByteBuffer[] chunks; // ключи по возрастанию - поиск двоичный
+    private final int count;
+    private final boolean rbt;
+
+    private MappedTree(MappedByteBuffer[] chunks, int count, boolean rbt) {
+        this.chunks = chunks;
+        this.count = count;
+        this.rbt = rbt;
+    }
+
+    public static MappedTree open(Path file) throws IOException { // читается только заголовок, ключи подгружает ОС по мере обращения
+        int count;
+        boolean rbt;
+        try (TreeFile.Reader in = new TreeFile.Reader(file)) { // проверка заголовка и размера
+            count = in.count;
+            rbt = in.type == TreeFile.TYPE_RBT;
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) { // отображение живет и после закрытия канала
+            return new MappedTree(TreeFile.mapKeys(ch, count), count, rbt);
+        }
+    }
+
+    public boolean isRedBlack() {return rbt;}
+    public int getNodeCount() {return count;}
+
+    private int key(int i) {
+        return chunks[i >>> CHUNK_SHIFT].getInt((i & CHUNK_MASK) << 2);
+    }
+
+    private int lowerBound(int key) { // первый индекс с ключом >= key
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(mid) < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int upperBound(int key) { // первый индекс с ключом > key
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(mid) <= key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    public boolean contains(int key) {
+        int i = lowerBound(key);
+        return i < count && key(i) == key;
+    }
+
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < count; i++) action.accept(key(i));
+    }
+
+    public void forEachInRange(int lo, int hi, IntConsumer action) {
+        if (lo > hi) return;
+        for (int i = lowerBound(lo); i < count && key(i) <= hi; i++) action.accept(key(i));
+    }
+
+    public int countInRange(int lo, int hi) {
+        if (lo > hi) return 0;
+        return upperBound(hi) - lowerBound(lo);
+    }
+
+    public OptionalInt floor(int key) {
+        int i = upperBound(key);
+        return i == 0 ? OptionalInt.empty() : OptionalInt.of(key(i - 1));
+    }
+
+    public OptionalInt ceiling(int key) {
+        int i = lowerBound(key);
+        return i == count ? OptionalInt.empty() : OptionalInt.of(key(i));
+    }
+
+    public OptionalInt min() {
+        return count == 0 ? OptionalInt.empty() : OptionalInt.of(key(0));
+    }
+
+    public OptionalInt max() {
+        return count == 0 ? OptionalInt.empty() : OptionalInt.of(key(count - 1));
+    }
+}
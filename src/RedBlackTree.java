@@ -1,48 +1,213 @@
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.OptionalInt;
+import java.util.function.IntConsumer;
 
-public class RedBlackTree {
+public class RedBlackTree implements SearchTree, TreeView<RedBlackTree.Node> {
 
     static final boolean RED = true;
     static final boolean BLACK = false;
 
-    private static class Node {
+    static class Node { // виден снаружи только как тип TreeView, поля трогает лишь само дерево
         int key; // значение узла
         Node left, right, parent; // потомки и родитель
         boolean color;
+        byte height; // высота поддерева, поддерживается при вставке/удалении (у NIL = 0); у КЧД она < 2*log2(n+1) <= 64 -
+                     // byte помещается в выравнивание после color, узел остается 32 байта
 
 
         Node(int k) {
             key = k;
             color = RED; // новые узлы всегда красные
+            height = 1;
             left = right = parent = null; // изначально нет связей
         }
     }
 
-    // nil лист
-    private final Node NIL = new Node(0);
+    static final class SizedNode extends Node { // узел дерева с orderStatistics - у простого дерева поля size нет
+        int size; // кол-во узлов в поддереве (у NIL = 0)
+
+        SizedNode(int k) {
+            super(k);
+            size = 1;
+        }
+    }
+
+    // nil лист; всегда SizedNode - size(NIL) = 0 без отдельной проверки, а он один на дерево
+    private final SizedNode NIL = new SizedNode(0);
     private Node root = NIL;
+    private final boolean orderStatistics; // поддерживать размеры поддеревьев для rank/select
     private int rotations = 0;
     private int nodeCount = 0;
+    private int singleRotations = 0; // статистика поворотов по видам
+    private int doubleRotations = 0;
+    private int insertRotations = 0;
+    private int deleteRotations = 0;
+    private long modCount = 0; // число изменений: холст по нему понимает, что прошла ровно одна операция
+    private final Node[] changed = new Node[8]; // родители мест вставки, удаления и поворотов последней операции
+    private int changedCount = 0; // -1 - поменялось все дерево (партия, загрузка)
+
+    public RedBlackTree() {
+        this(false);
+    }
 
-    public RedBlackTree() { // nil всегда черные и тд
+    public RedBlackTree(boolean orderStatistics) { // nil всегда черные и тд; true - доступны rank/select/percentile
+        this.orderStatistics = orderStatistics;
         NIL.color = BLACK;
+        NIL.height = 0;
+        NIL.size = 0;
         NIL.left = NIL.right = NIL.parent = NIL;
         root = NIL;
     }
 
+    public boolean hasOrderStatistics() {return orderStatistics;}
+
     public int getRotations() {return rotations;}
-    public void resetRotations() {this.rotations = 0;}
+    public void resetRotations() {
+        this.rotations = 0;
+        this.singleRotations = this.doubleRotations = 0;
+        this.insertRotations = this.deleteRotations = 0;
+    }
     public int getNodeCount() {return nodeCount;}
+    public long getModCount() {return modCount;}
+
+
+    public int getHeight() { // высота хранится в корне - O(1) вместо обхода всего дерева
+        return root.height;
+    }
+
+    public int getBlackHeight() { // кол-во черных узлов от корня до листа (одинаково на всех путях) - O(log n)
+        int bh = 0;
+        for (Node x = root; x != NIL; x = x.left) {
+            if (x.color == BLACK) bh++;
+        }
+        return bh;
+    }
+
+    public TreeStats getStats() {
+        return new TreeStats(getHeight(), getBlackHeight(), nodeCount,
+                singleRotations, doubleRotations, insertRotations, deleteRotations);
+    }
+
+    private void updateHeight(Node n) {
+        n.height = (byte) (1 + Math.max(n.left.height, n.right.height)); // высота = 1 + максимум из высот поддеревьев
+    }
+
+    private Node newNode(int key) {
+        return orderStatistics ? new SizedNode(key) : new Node(key);
+    }
+
+    private static int size(Node n) { // только при orderStatistics - там все узлы SizedNode
+        return ((SizedNode) n).size;
+    }
+
+    private void updateSize(Node n) {
+        ((SizedNode) n).size = 1 + size(n.left) + size(n.right);
+    }
+
+    private void updateSizesUp(Node x) { // размер меняется у всех предков - идем до корня
+        for (; x != NIL; x = x.parent) updateSize(x);
+    }
+
+    private void updateHeightsUp(Node x) { // пересчет высот от x вверх, пока высота меняется
+        while (x != NIL) { // остальные высоты в дереве всегда актуальны, поэтому выше неизменного узла ничего не меняется
+            int old = x.height;
+            updateHeight(x);
+            if (x.height == old) return;
+            x = x.parent;
+        }
+    }
+
+    public static RedBlackTree fromSorted(int[] keys) { // новое дерево из набора ключей за O(n)
+        RedBlackTree t = new RedBlackTree();
+        t.bulkLoad(keys);
+        return t;
+    }
+
+    public void bulkLoad(int[] keys) { // заменяет содержимое сбалансированным деревом, цвета назначаются сразу
+        int[] sorted = AVLTree.sortedCopy(keys);
+        int n = sorted.length;
+        // при делении отрезка пополам все листья лежат на двух нижних уровнях;
+        // самый нижний (глубина redDepth) красим в красный - черная высота на всех путях одинакова
+        int redDepth = 31 - Integer.numberOfLeadingZeros(n + 1); // floor(log2(n+1)) - глубина неполного уровня
+        root = buildBalanced(sorted, 0, n, 0, redDepth);
+        root.parent = NIL;
+        nodeCount = n;
+        changedAll();
+    }
+
+    public void save(Path file) throws IOException { // формат общий с AVLTree (TreeFile), вместо высоты - бит цвета
+        try (TreeFile.Writer out = new TreeFile.Writer(file, TreeFile.TYPE_RBT, nodeCount)) {
+            saveKeys(root, out);
+            saveShape(root, out);
+            out.commit();
+        }
+    }
+
+    private void saveKeys(Node node, TreeFile.Writer out) throws IOException {
+        if (node == NIL) return;
+        saveKeys(node.left, out);
+        out.key(node.key);
+        saveKeys(node.right, out);
+    }
 
+    private void saveShape(Node node, TreeFile.Writer out) throws IOException {
+        if (node == NIL) return;
+        int b = node.color == RED ? TreeFile.RED : 0;
+        if (node.left != NIL) b |= TreeFile.HAS_LEFT;
+        if (node.right != NIL) b |= TreeFile.HAS_RIGHT;
+        out.shape(b);
+        saveShape(node.left, out);
+        saveShape(node.right, out);
+    }
 
-    public int getHeight() { // рекурсивно ищем узел
-        return heightHelper(root);
+    public void load(Path file) throws IOException { // та же форма и цвета за O(n), без поворотов и перекрашиваний
+        try (TreeFile.Reader in = new TreeFile.Reader(file)) {
+            if (in.type != TreeFile.TYPE_RBT) { // у файла AVL нет цветов - раскрашиваем как bulkLoad
+                bulkLoad(in.readKeys());
+                return;
+            }
+            Node loaded = in.count == 0 ? NIL : loadShape(in, 0);
+            in.finish();
+            if (loaded.color == RED) throw TreeFile.corrupted(in.file);
+            root = loaded;
+            root.parent = NIL;
+            nodeCount = in.count;
+            changedAll();
+        }
     }
 
-    private int heightHelper(Node node) {
-        if (node == NIL) return 0;
-        return 1 + Math.max(heightHelper(node.left), heightHelper(node.right)); // высота = 1 + максимум из высот поддеревьев
+    private Node loadShape(TreeFile.Reader in, int depth) throws IOException {
+        int b = in.nextShape(depth);
+        Node left = (b & TreeFile.HAS_LEFT) != 0 ? loadShape(in, depth + 1) : NIL;
+        Node node = newNode(in.nextKey());
+        node.color = (b & TreeFile.RED) != 0 ? RED : BLACK;
+        node.left = left;
+        node.right = (b & TreeFile.HAS_RIGHT) != 0 ? loadShape(in, depth + 1) : NIL;
+        if (node.left != NIL) node.left.parent = node;
+        if (node.right != NIL) node.right.parent = node;
+        if (node.color == RED && (node.left.color == RED || node.right.color == RED)) throw TreeFile.corrupted(in.file);
+        updateHeight(node);
+        if (orderStatistics) updateSize(node);
+        return node;
+    }
+
+    private Node buildBalanced(int[] keys, int from, int to, int depth, int redDepth) {
+        if (from >= to) return NIL;
+        int mid = (from + to) >>> 1;
+        Node node = newNode(keys[mid]);
+        node.color = (depth == redDepth && depth > 0) ? RED : BLACK;
+        node.left = buildBalanced(keys, from, mid, depth + 1, redDepth);
+        node.right = buildBalanced(keys, mid + 1, to, depth + 1, redDepth);
+        if (node.left != NIL) node.left.parent = node;
+        if (node.right != NIL) node.right.parent = node;
+        updateHeight(node);
+        if (orderStatistics) updateSize(node);
+        return node;
     }
 
     public boolean contains(int key) {
@@ -57,12 +222,185 @@ public class RedBlackTree {
         return NIL;
     }
 
+    public void forEach(IntConsumer action) { // все ключи по возрастанию
+        forEachInRange(Integer.MIN_VALUE, Integer.MAX_VALUE, action);
+    }
+
+    public void forEachInRange(int lo, int hi, IntConsumer action) { // ключи из [lo, hi] за O(log n + k), шаги через parent
+        if (lo > hi) return;
+        for (Node x = ceilingNode(lo); x != NIL && x.key <= hi; x = successor(x)) {
+            action.accept(x.key);
+        }
+    }
+
+    public int countInRange(int lo, int hi) { // O(log n) с orderStatistics, иначе O(log n + k)
+        if (lo > hi) return 0;
+        if (orderStatistics) return countBelow(hi, true) - countBelow(lo, false);
+        int count = 0;
+        for (Node x = ceilingNode(lo); x != NIL && x.key <= hi; x = successor(x)) count++;
+        return count;
+    }
+
+    public int traceRange(int lo, int hi, IntConsumer action, int maxSteps) { // forEachInRange, но не дольше maxSteps шагов
+        if (lo > hi) return 0;
+        int steps = 0, count = 0;
+        Node x = NIL;
+        for (Node n = root; n != NIL; ) { // ceilingNode
+            if (++steps > maxSteps) return -1;
+            if (n.key >= lo) {
+                x = n;
+                n = n.left;
+            } else {
+                n = n.right;
+            }
+        }
+        while (x != NIL && x.key <= hi) {
+            if (action != null) action.accept(x.key);
+            count++;
+            if (x.right != NIL) { // successor
+                for (x = x.right; x.left != NIL; x = x.left) {
+                    if (++steps > maxSteps) return -1;
+                }
+            } else {
+                Node p = x.parent;
+                while (p != NIL && x == p.right) {
+                    if (++steps > maxSteps) return -1;
+                    x = p;
+                    p = p.parent;
+                }
+                x = p;
+            }
+            if (++steps > maxSteps) return -1;
+        }
+        return count;
+    }
+
+    public int traceCount(int lo, int hi, int maxSteps) {
+        if (lo > hi) return 0;
+        if (!orderStatistics) return traceRange(lo, hi, null, maxSteps);
+        int above = countBelow(hi, true, maxSteps), below = countBelow(lo, false, maxSteps);
+        return above < 0 || below < 0 ? -1 : above - below;
+    }
+
+    public int rank(int key) { // кол-во ключей строго меньше key
+        checkOrderStatistics();
+        return countBelow(key, false);
+    }
+
+    public int select(int index) { // ключ с порядковым номером index (с 0) по возрастанию
+        checkOrderStatistics();
+        if (index < 0 || index >= nodeCount) throw new IndexOutOfBoundsException("index " + index + ", size " + nodeCount);
+        Node x = root;
+        while (true) {
+            int leftSize = size(x.left);
+            if (index < leftSize) {
+                x = x.left;
+            } else if (index == leftSize) {
+                return x.key;
+            } else {
+                index -= leftSize + 1;
+                x = x.right;
+            }
+        }
+    }
+
+    public int percentile(double p) { // p-й процентиль (0..100) методом ближайшего ранга
+        checkOrderStatistics();
+        if (nodeCount == 0) throw new NoSuchElementException("дерево пустое");
+        if (p < 0 || p > 100) throw new IllegalArgumentException("p должен быть в [0, 100]: " + p);
+        int index = (int) Math.ceil(p / 100.0 * nodeCount) - 1;
+        return select(Math.max(0, index));
+    }
+
+    private int countBelow(int key, boolean inclusive) { // кол-во ключей < key (или <= key)
+        return countBelow(key, inclusive, Integer.MAX_VALUE);
+    }
+
+    private int countBelow(int key, boolean inclusive, int maxSteps) { // -1 - спуск длиннее maxSteps
+        int count = 0;
+        for (Node x = root; x != NIL; ) {
+            if (--maxSteps < 0) return -1;
+            if (key < x.key || (!inclusive && key == x.key)) {
+                x = x.left;
+            } else {
+                count += size(x.left) + 1;
+                x = x.right;
+            }
+        }
+        return count;
+    }
+
+    private void checkOrderStatistics() {
+        if (!orderStatistics) throw new IllegalStateException("дерево создано без orderStatistics");
+    }
+
+    public OptionalInt floor(int key) { // наибольший ключ <= key
+        Node x = floorNode(key);
+        return x == NIL ? OptionalInt.empty() : OptionalInt.of(x.key);
+    }
+
+    public OptionalInt ceiling(int key) { // наименьший ключ >= key
+        Node x = ceilingNode(key);
+        return x == NIL ? OptionalInt.empty() : OptionalInt.of(x.key);
+    }
+
+    public OptionalInt min() {
+        return root == NIL ? OptionalInt.empty() : OptionalInt.of(minimum(root).key);
+    }
+
+    public OptionalInt max() {
+        if (root == NIL) return OptionalInt.empty();
+        Node x = root;
+        while (x.right != NIL) x = x.right;
+        return OptionalInt.of(x.key);
+    }
+
+    private Node floorNode(int key) {
+        Node best = NIL;
+        for (Node x = root; x != NIL; ) {
+            if (x.key <= key) {
+                best = x;
+                x = x.right;
+            } else {
+                x = x.left;
+            }
+        }
+        return best;
+    }
+
+    private Node ceilingNode(int key) { // первый по порядку узел с ключом >= key
+        Node best = NIL;
+        for (Node x = root; x != NIL; ) {
+            if (x.key >= key) {
+                best = x;
+                x = x.left;
+            } else {
+                x = x.right;
+            }
+        }
+        return best;
+    }
+
+    private Node successor(Node x) { // следующий по порядку узел (симметрично predecessor)
+        if (x.right != NIL) return minimum(x.right);
+        Node p = x.parent;
+        while (p != NIL && x == p.right) {
+            x = p;
+            p = p.parent;
+        }
+        return p;
+    }
+
     public void insert(int key) {
-        Node z = new Node(key); // создаем новый узел с заданным ключом
+        beginChange();
+        insertFrom(root, key);
+    }
+
+    private Node insertFrom(Node x, int key) { // вставка со спуском от x: корень или "палец" в insertAll
+        Node z = newNode(key); // создаем новый узел с заданным ключом
         z.left = z.right = z.parent = NIL; // изначально связи ведут в NIL
 
         Node y = NIL; // потенциальный родитель
-        Node x = root; // текущ вершина(рут)
         while (x != NIL) {
             y = x; // запоминаем текущий узел как потенциального родителя
             if (z.key < x.key) {
@@ -78,8 +416,14 @@ public class RedBlackTree {
         else y.right = z;
 
         z.color = RED; // новые узлы всегда красные
+        markChanged(y);
+        updateHeightsUp(y); // высоты до балансировки, повороты поправят свои узлы сами
+        if (orderStatistics) updateSizesUp(y);
+        int before = rotations;
         insertFixup(z); // балансируем
+        insertRotations += rotations - before;
         nodeCount++;
+        return z;
     }
 
     private void insertFixup(Node z) {
@@ -95,6 +439,9 @@ public class RedBlackTree {
                     if (z == z.parent.right) { // если z - правый потомок, то поднимаемся к родителю и делаем левый поворот
                         z = z.parent;
                         leftRotate(z);
+                        doubleRotations++;
+                    } else {
+                        singleRotations++;
                     }
                     z.parent.color = BLACK; // теперь z - левый потомок
                     z.parent.parent.color = RED; // тогда дедушка становится красным и правый поворот
@@ -111,6 +458,9 @@ public class RedBlackTree {
                     if (z == z.parent.left) {
                         z = z.parent;
                         rightRotate(z);
+                        doubleRotations++;
+                    } else {
+                        singleRotations++;
                     }
                     z.parent.color = BLACK;
                     z.parent.parent.color = RED;
@@ -124,10 +474,15 @@ public class RedBlackTree {
     public void delete(int key) {
         Node z = searchNode(root, key);  // ищем узел для удалния
         if (z == NIL) return;
+        beginChange();
+        deleteNode(z);
+    }
 
+    private void deleteNode(Node z) {
         Node y = z; //  узел, который удаляем из дерева
         boolean yOriginalColor = y.color;
         Node x; // узел котороый займет место y
+        markChanged(z.parent); // все перестановки ниже - внутри поддерева родителя z
 
         if (z.left == NIL) { // 1СЛ - у z нет левого потомка, тогда правый потомок займет место
             x = z.right;
@@ -151,11 +506,98 @@ public class RedBlackTree {
             y.left = z.left; //левое поддерево z становится левым поддеревом y
             y.left.parent = y; // обновляем родителя и затем сохраняем цвет z
             y.color = z.color;
+            y.height = z.height; // и старую высоту позиции z - чтобы подъем ниже мог остановиться раньше
         }
+        updateHeightsUp(x.parent); // самый нижний измененный узел (x может быть NIL - его parent выставлен выше)
+        if (orderStatistics) updateSizesUp(x.parent);
+        int before = rotations;
         if (yOriginalColor == BLACK) deleteFixup(x); // балансировка черной высоты в случае удаления черного узла
+        deleteRotations += rotations - before;
         nodeCount--;
     }
 
+    public void insertAll(int[] keys) { // вставка партии: ключи сортируются, дубликаты партии отбрасываются
+        int[] batch = AVLTree.sortedDistinct(keys);
+        if (batch.length == 0) return;
+        changedAll();
+        if (batch.length >= nodeCount) { // партия не меньше дерева - слияние и перестройка за O(n + m) выгоднее
+            bulkLoad(mergeInorder(batch, false));
+            return;
+        }
+        Node finger = NIL; // последний вставленный узел - следующий ключ больше, поэтому спуск начинается рядом с ним
+        for (int key : batch) {
+            finger = insertFrom(finger == NIL ? root : climb(finger, key), key);
+        }
+    }
+
+    public void deleteAll(int[] keys) { // удаление партии: по одному вхождению каждого ключа
+        int[] batch = AVLTree.sortedDistinct(keys);
+        if (batch.length == 0 || root == NIL) return;
+        changedAll();
+        if (batch.length >= nodeCount) {
+            bulkLoad(mergeInorder(batch, true));
+            return;
+        }
+        Node finger = NIL; // узел с ключом меньше текущего (предшественник последнего удаленного)
+        for (int key : batch) {
+            Node z = searchNode(finger == NIL ? root : climb(finger, key), key);
+            if (z == NIL) continue;
+            finger = predecessor(z); // z исчезнет, а его предшественник останется в дереве
+            deleteNode(z);
+        }
+    }
+
+    private Node climb(Node x, int key) { // подъем от пальца, пока key не попадет в диапазон поддерева x
+        // нижняя граница выполнена всегда (ключ пальца меньше key), проверяем только верхнюю:
+        // x - левый потомок родителя с ключом больше key
+        while (x.parent != NIL && !(x == x.parent.left && key < x.parent.key)) {
+            x = x.parent;
+        }
+        return x;
+    }
+
+    private Node predecessor(Node x) {
+        if (x.left != NIL) { // самый правый в левом поддереве
+            x = x.left;
+            while (x.right != NIL) x = x.right;
+            return x;
+        }
+        Node p = x.parent; // иначе первый предок, для которого x в правом поддереве
+        while (p != NIL && x == p.left) {
+            x = p;
+            p = p.parent;
+        }
+        return p;
+    }
+
+    private int[] mergeInorder(int[] batch, boolean remove) { // слияние ключей дерева (inorder) с упорядоченной партией
+        int[] tree = new int[nodeCount];
+        fillInorder(root, tree, 0);
+        int[] out = new int[remove ? tree.length : tree.length + batch.length];
+        int i = 0, j = 0, n = 0;
+        while (i < tree.length) {
+            while (j < batch.length && batch[j] < tree[i]) { // ключи партии до tree[i]
+                if (!remove) out[n++] = batch[j];
+                j++;
+            }
+            if (remove && j < batch.length && batch[j] == tree[i]) { // удаляем одно вхождение
+                j++;
+                i++;
+                continue;
+            }
+            out[n++] = tree[i++];
+        }
+        while (!remove && j < batch.length) out[n++] = batch[j++];
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private int fillInorder(Node node, int[] out, int i) {
+        if (node == NIL) return i;
+        i = fillInorder(node.left, out, i);
+        out[i++] = node.key;
+        return fillInorder(node.right, out, i);
+    }
+
     private void transplant(Node u, Node v) { // замена поддерева с корнем u на другое с v
         if (u.parent == NIL) root = v; // u был корнем
         else if (u == u.parent.left) u.parent.left = v; // u был левым потомком
@@ -176,6 +618,7 @@ public class RedBlackTree {
                     w.color = BLACK; // брата в черный
                     x.parent.color = RED; // родителей в красный
                     leftRotate(x.parent); // левый поворот
+                    singleRotations++;
                     w = x.parent.right; // обновление ссылки на брата и можем применять случаи 1B/1C/1D
                 }
                 if ((w.left == NIL || w.left.color == BLACK) && // сл 1B: оба потомка брата ЧЕРНЫЕ
@@ -188,6 +631,9 @@ public class RedBlackTree {
                         w.color = RED; // брат становится красным, правый поворот брата,
                         rightRotate(w);
                         w = x.parent.right; // обновляем брата
+                        doubleRotations++; // вместе с поворотом 1D - двойной
+                    } else {
+                        singleRotations++;
                     } // случай 1D: правый потомок брата КРАСНЫЙ
                     w.color = x.parent.color; // брат наследует цвет родителя
                     x.parent.color = BLACK; // родитель становится черным
@@ -201,6 +647,7 @@ public class RedBlackTree {
                     w.color = BLACK;
                     x.parent.color = RED;
                     rightRotate(x.parent);
+                    singleRotations++;
                     w = x.parent.left;
                 }
                 if ((w.right == NIL || w.right.color == BLACK) &&
@@ -213,6 +660,9 @@ public class RedBlackTree {
                         w.color = RED;
                         leftRotate(w);
                         w = x.parent.left;
+                        doubleRotations++;
+                    } else {
+                        singleRotations++;
                     }
                     w.color = x.parent.color;
                     x.parent.color = BLACK;
@@ -226,6 +676,7 @@ public class RedBlackTree {
     }
 
     private void leftRotate(Node x) {
+        markChanged(x.parent);
         Node y = x.right;   //  y - правый потомок x (станет новым корнем)
 
         // перемещаем левое поддерево y к x
@@ -249,10 +700,18 @@ public class RedBlackTree {
         y.left = x; // x становится левым потомком y
         x.parent = y; // обновляем родителя x
 
+        updateHeight(x); // сначала опустившийся x, потом y и его предки
+        updateHeight(y);
+        updateHeightsUp(y.parent);
+        if (orderStatistics) { // размер поддерева на месте x не меняется - пересчитываем только x и y
+            updateSize(x);
+            updateSize(y);
+        }
         rotations++;
     }
 
     private void rightRotate(Node x) { // правый поворот вокруг узла x
+        markChanged(x.parent);
         Node y = x.left; // y - левый потомок x (станет новым корнем)
 
         // перемещаем правое поддерево y к x
@@ -276,36 +735,78 @@ public class RedBlackTree {
         y.right = x;  // x становится правым потомком y
         x.parent = y;   // обновляем родителя x
 
+        updateHeight(x);
+        updateHeight(y);
+        updateHeightsUp(y.parent);
+        if (orderStatistics) {
+            updateSize(x);
+            updateSize(y);
+        }
         rotations++;  // увеличиваем счетчик поворотов
     }
 
-    static class RBTNodeWrapper { // класс-обертка для отрисовки
-        int key; // значение узла
-        boolean isRed;
-        RBTNodeWrapper left, right; // упрощенные связи (только для отрисовки)
-        int depth;
-        RBTNodeWrapper(int k, boolean isRed, int depth) {
-            this.key = k;
-            this.isRed = isRed;
-            this.depth = depth;
+    // ---------- TreeView: обход и изменения для холста ----------
+
+    private void beginChange() { // одиночная операция: дальше копим узлы, под которыми она что-то поменяла
+        modCount++;
+        changedCount = 0;
+    }
+
+    private void changedAll() {
+        modCount++;
+        changedCount = -1;
+    }
+
+    private void markChanged(Node n) { // только запись в массив - в замерах TreeCompare подъемов к корню нет
+        if (changedCount < 0) return;
+        if (n == NIL || changedCount == changed.length) changedCount = -1; // поменялся корень
+        else changed[changedCount++] = n;
+    }
+
+    public Node root() {return root == NIL ? null : root;}
+    public Node left(Node node) {return node.left == NIL ? null : node.left;}
+    public Node right(Node node) {return node.right == NIL ? null : node.right;}
+    public int key(Node node) {return node.key;}
+    public int decoration(Node node) {return node.color == RED ? 1 : 0;}
+    public int subtreeSize(Node node) {return orderStatistics ? size(node) : -1;}
+
+    public int changedPath(byte[] dirs) {
+        if (changedCount <= 0) return 0;
+        Node top = changed[0];
+        for (int i = 1; i < changedCount; i++) top = commonAncestor(top, changed[i]);
+        int len = depthOf(top);
+        if (len > dirs.length) return 0;
+        for (int i = len - 1; i >= 0; i--, top = top.parent) {
+            dirs[i] = (byte) (top == top.parent.left ? 0 : 1);
         }
+        return len;
     }
 
-    public RBTNodeWrapper getRootWrapper() { // получение корня для визуализации
-        if (root == NIL) return null;
-        return buildWrapper(root, 0); // запуск рекурсии построение с корня (глубина = 0)
+    private int depthOf(Node n) {
+        int d = 0;
+        for (; n.parent != NIL; n = n.parent) d++;
+        return d;
     }
 
-    private RBTNodeWrapper buildWrapper(Node node, int depth) { // рекурсивное построение дерева для отрисовки
-        if (node == NIL) return null; // нилы не рисуем
+    private Node commonAncestor(Node a, Node b) {
+        int da = depthOf(a), db = depthOf(b);
+        for (; da > db; da--) a = a.parent;
+        for (; db > da; db--) b = b.parent;
+        while (a != b) {
+            a = a.parent;
+            b = b.parent;
+        }
+        return a;
+    }
 
-        RBTNodeWrapper w = new RBTNodeWrapper( // обертка текущего узла
-                node.key,
-                node.color == RED,
-                depth);
-        w.left = buildWrapper(node.left, depth+1); // рекурсивно строим обертки для потомков
-        w.right = buildWrapper(node.right, depth+1);
-        return w;
+    public int tracePath(int key, int[] path) { // итеративный поиск с ограничением длины - безопасен для оптимистичного чтения
+        int d = 0;
+        for (Node node = root; node != NIL; node = key < node.key ? node.left : node.right) {
+            if (d == path.length) return -1;
+            path[d++] = node.key;
+            if (key == node.key) return d;
+        }
+        return 0;
     }
 
     public List<Integer> findPath(int key) {
@@ -0,0 +1,29 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.function.IntConsumer;
+
+public interface SearchTree extends IntTree { // общее API AVLTree и RedBlackTree для оберток (ConcurrentTree и т.п.)
+
+    void insertAll(int[] keys);
+    void deleteAll(int[] keys);
+
+    List<Integer> findPath(int key);
+    int tracePath(int key, int[] path); // путь поиска в path; длина пути если найден, 0 если нет, -1 если путь не влез в path
+
+    void forEach(IntConsumer action);
+    // forEachInRange/countInRange из IntTree с ограничением шагов по узлам - безопасны для оптимистичного чтения: на разорванном повороте дереве
+    // не зацикливаются, а возвращают -1; иначе - кол-во ключей в [lo, hi] (traceRange еще и выдает их в action)
+    int traceRange(int lo, int hi, IntConsumer action, int maxSteps);
+    int traceCount(int lo, int hi, int maxSteps);
+    OptionalInt floor(int key);
+    OptionalInt ceiling(int key);
+    OptionalInt min();
+    OptionalInt max();
+
+    void save(Path file) throws IOException; // бинарный снимок TreeFile, открывается и через MappedTree
+    void load(Path file) throws IOException;
+
+    TreeStats getStats();
+}
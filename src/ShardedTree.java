@@ -0,0 +1,321 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+public class ShardedTree implements AutoCloseable { // ключи int делятся на диапазоны-шарды, каждым деревом владеет один поток-писатель
+
+    private static final int BATCH = 256; // сколько запросов поток шарда разбирает за один проход по очереди
+
+    private static final class Request<T> { // операция над деревом шарда + future для ответа
+        final Function<SearchTree, T> op;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Request(Function<SearchTree, T> op) {
+            this.op = op;
+        }
+
+        void run(SearchTree tree) {
+            try {
+                result.complete(op.apply(tree));
+            } catch (RuntimeException e) { // дерево цело - ошибка только этого запроса
+                result.completeExceptionally(e);
+            } catch (Throwable e) { // Error (OOM посреди поворота и т.п.) - дерево могло остаться разорванным, шард дальше не работает
+                result.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+
+    private static final class Shard implements Runnable {
+        final SearchTree tree; // доступ только из thread - никаких блокировок вокруг дерева
+        final ConcurrentLinkedQueue<Request<?>> queue = new ConcurrentLinkedQueue<>(); // lock-free очередь
+        final Thread thread;
+        volatile boolean parked; // поток собирается уснуть - отправителю нужно его разбудить
+        volatile boolean stopped;
+        volatile Throwable failure; // поток шарда умер на этой ошибке - запросы к шарду сразу отклоняются
+
+        Shard(SearchTree tree, String name) {
+            this.tree = tree;
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        void submit(Request<?> r) {
+            queue.offer(r);
+            if (parked) LockSupport.unpark(thread); // будим только спящий поток
+        }
+
+        public void run() {
+            try {
+                serve();
+            } catch (Throwable e) {
+                failure = e; // до разбора очереди - submit после offer увидит failure и заберет свой запрос сам
+            }
+            for (Request<?> r; (r = queue.poll()) != null; ) { // запросы, пришедшие после close() или ошибки
+                r.result.completeExceptionally(rejection());
+            }
+            if (failure instanceof Error) throw (Error) failure; // пусть попадет и в обработчик потока
+        }
+
+        IllegalStateException rejection() {
+            return failure == null ? new IllegalStateException("ShardedTree закрыт")
+                    : new IllegalStateException(thread.getName() + " остановлен ошибкой", failure);
+        }
+
+        private void serve() {
+            while (true) {
+                Request<?> r = queue.poll();
+                if (r == null) {
+                    if (stopped) break; // остановка только на пустой очереди - принятые запросы выполняются
+                    parked = true;
+                    if (queue.isEmpty() && !stopped) LockSupport.park(this); // повторная проверка после parked = true - не теряем пробуждение
+                    parked = false;
+                    continue;
+                }
+                for (int n = 0; r != null; r = ++n < BATCH ? queue.poll() : null) { // пачкой до BATCH запросов
+                    r.run(tree);
+                }
+            }
+        }
+    }
+
+    private final Shard[] shards;
+    private final int[] splits; // шард i - ключи из [splits[i-1], splits[i]), по возрастанию
+    private volatile boolean closed;
+
+    public ShardedTree(int shardCount, Supplier<SearchTree> treeFactory) { // равные доли всего диапазона int - только если ключи размазаны по нему
+        this(evenSplits(shardCount), treeFactory);
+    }
+
+    public ShardedTree(int[] splits, Supplier<SearchTree> treeFactory) { // например new ShardedTree(splitPoints(sample, 8), RedBlackTree::new)
+        for (int i = 1; i < splits.length; i++) {
+            if (splits[i] <= splits[i - 1]) throw new IllegalArgumentException("границы шардов должны строго возрастать");
+        }
+        this.splits = splits.clone();
+        shards = new Shard[splits.length + 1];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(treeFactory.get(), "tree-shard-" + i);
+            shards[i].thread.start();
+        }
+    }
+
+    private static int[] evenSplits(int shardCount) {
+        if (shardCount < 1) throw new IllegalArgumentException("shardCount должен быть >= 1: " + shardCount);
+        int[] splits = new int[shardCount - 1];
+        for (int i = 1; i < shardCount; i++) splits[i - 1] = (int) (Integer.MIN_VALUE + ((1L << 32) * i) / shardCount);
+        return splits;
+    }
+
+    public static int[] splitPoints(int[] sample, int shardCount) { // границы по квантилям выборки ключей - шарды получают поровну
+        if (shardCount < 1) throw new IllegalArgumentException("shardCount должен быть >= 1: " + shardCount);
+        int[] sorted = sample.clone();
+        Arrays.sort(sorted);
+        int[] splits = new int[shardCount - 1];
+        int n = 0;
+        for (int i = 1; i < shardCount && sorted.length > 0; i++) {
+            int split = sorted[(int) ((long) sorted.length * i / shardCount)];
+            if (n == 0 || split > splits[n - 1]) splits[n++] = split; // горячий ключ на несколько квантилей - один шард
+        }
+        return Arrays.copyOf(splits, n);
+    }
+
+    public int getShardCount() {return shards.length;}
+
+    int shardOf(int key) { // номер шарда = сколько границ <= key
+        int i = Arrays.binarySearch(splits, key);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    private <T> CompletableFuture<T> submit(int shard, Function<SearchTree, T> op) {
+        if (closed) throw new IllegalStateException("ShardedTree закрыт");
+        Shard s = shards[shard];
+        Request<T> r = new Request<>(op);
+        if (s.failure != null) {
+            r.result.completeExceptionally(s.rejection());
+            return r.result;
+        }
+        s.submit(r);
+        if ((closed || s.failure != null) && s.queue.remove(r)) { // close() или ошибка между проверкой и offer - поток шарда может уже не взять запрос
+            r.result.completeExceptionally(s.rejection());
+        }
+        return r.result;
+    }
+
+    private void checkNotShardThread() { // join в потоке шарда ждал бы сам себя (или соседа, который ждет его) - вечно
+        for (Shard s : shards) {
+            if (s.thread == Thread.currentThread()) {
+                throw new IllegalStateException("синхронный вызов ShardedTree из потока шарда - только *Async");
+            }
+        }
+    }
+
+    // ---------- асинхронные операции ----------
+
+    public CompletableFuture<Void> insertAsync(int key) {
+        return submit(shardOf(key), t -> {
+            t.insert(key);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> deleteAsync(int key) {
+        return submit(shardOf(key), t -> {
+            t.delete(key);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Boolean> containsAsync(int key) {
+        return submit(shardOf(key), t -> t.contains(key));
+    }
+
+    public CompletableFuture<Void> insertAllAsync(int[] keys) { // партия режется по шардам, каждый шард вставляет свою часть целиком
+        int[][] parts = partition(keys);
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (int i = 0; i < parts.length; i++) {
+            if (parts[i].length == 0) continue;
+            int[] part = parts[i];
+            pending.add(submit(i, t -> {
+                t.insertAll(part);
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]));
+    }
+
+    public CompletableFuture<Void> deleteAllAsync(int[] keys) {
+        int[][] parts = partition(keys);
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (int i = 0; i < parts.length; i++) {
+            if (parts[i].length == 0) continue;
+            int[] part = parts[i];
+            pending.add(submit(i, t -> {
+                t.deleteAll(part);
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private int[][] partition(int[] keys) {
+        int[] counts = new int[shards.length];
+        for (int k : keys) counts[shardOf(k)]++;
+        int[][] parts = new int[shards.length][];
+        for (int i = 0; i < parts.length; i++) parts[i] = new int[counts[i]];
+        Arrays.fill(counts, 0);
+        for (int k : keys) {
+            int s = shardOf(k);
+            parts[s][counts[s]++] = k;
+        }
+        return parts;
+    }
+
+    // ---------- синхронные обертки: просто ждут ответа шарда (из виртуальных потоков JDK 21+ это дешево) ----------
+    // как и forEachInRange, статистика и close - не из потока шарда (например, из then-цепочки future без *Async):
+    // такой вызов сразу бросает IllegalStateException
+
+    public void insert(int key) {
+        checkNotShardThread();
+        insertAsync(key).join();
+    }
+
+    public void delete(int key) {
+        checkNotShardThread();
+        deleteAsync(key).join();
+    }
+
+    public boolean contains(int key) {
+        checkNotShardThread();
+        return containsAsync(key).join();
+    }
+
+    public void insertAll(int[] keys) {
+        checkNotShardThread();
+        insertAllAsync(keys).join();
+    }
+
+    public void deleteAll(int[] keys) {
+        checkNotShardThread();
+        deleteAllAsync(keys).join();
+    }
+
+    // ---------- упорядоченный обход и статистика по всем шардам ----------
+
+    public void forEach(IntConsumer action) {
+        forEachInRange(Integer.MIN_VALUE, Integer.MAX_VALUE, action);
+    }
+
+    public void forEachInRange(int lo, int hi, IntConsumer action) { // шарды упорядочены по ключам - склейка без слияния
+        if (lo > hi) return;
+        checkNotShardThread();
+        int first = shardOf(lo), last = shardOf(hi);
+        List<CompletableFuture<int[]>> parts = new ArrayList<>(last - first + 1);
+        for (int i = first; i <= last; i++) { // все шарды собирают свою часть параллельно
+            parts.add(submit(i, t -> collectRange(t, lo, hi)));
+        }
+        for (CompletableFuture<int[]> part : parts) {
+            for (int key : part.join()) action.accept(key);
+        }
+    }
+
+    private static int[] collectRange(SearchTree tree, int lo, int hi) { // выполняется в потоке шарда
+        int[] keys = new int[tree.countInRange(lo, hi)];
+        int[] n = {0};
+        tree.forEachInRange(lo, hi, k -> keys[n[0]++] = k);
+        return keys;
+    }
+
+    public int getNodeCount() {
+        int total = 0;
+        for (TreeStats s : getShardStats()) total += s.nodeCount;
+        return total;
+    }
+
+    public TreeStats[] getShardStats() {
+        checkNotShardThread();
+        List<CompletableFuture<TreeStats>> pending = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) pending.add(submit(i, SearchTree::getStats));
+        TreeStats[] stats = new TreeStats[shards.length];
+        for (int i = 0; i < shards.length; i++) stats[i] = pending.get(i).join();
+        return stats;
+    }
+
+    public TreeStats getStats() { // высоты - максимум по шардам, счетчики - сумма
+        int height = 0, blackHeight = 0, nodeCount = 0;
+        int single = 0, dbl = 0, ins = 0, del = 0;
+        for (TreeStats s : getShardStats()) {
+            height = Math.max(height, s.height);
+            blackHeight = Math.max(blackHeight, s.blackHeight);
+            nodeCount += s.nodeCount;
+            single += s.singleRotations;
+            dbl += s.doubleRotations;
+            ins += s.insertRotations;
+            del += s.deleteRotations;
+        }
+        return new TreeStats(height, blackHeight, nodeCount, single, dbl, ins, del);
+    }
+
+    @Override
+    public void close() { // дорабатывает уже принятые запросы и останавливает потоки шардов
+        checkNotShardThread();
+        closed = true;
+        for (Shard s : shards) {
+            s.stopped = true;
+            LockSupport.unpark(s.thread);
+        }
+        for (Shard s : shards) {
+            try {
+                s.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
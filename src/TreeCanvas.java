@@ -1,65 +1,299 @@
 import javafx.geometry.VPos;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseButton;
 import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
 import javafx.scene.text.TextAlignment;
 import javafx.scene.control.Alert;
-import java.util.*;
+import java.util.Arrays;
 
 public class TreeCanvas extends Canvas {
 
-    private static final double NODE_RADIUS = 18; // радиус кружка
-    private static final double LEVEL_HEIGHT = 70; // расстояние м/у уровнями дерева
+    // геометрия общая с TreeExport (константы подставляются при компиляции - экспорту JavaFX не нужен)
+    static final double NODE_RADIUS = 18; // радиус кружка
+    static final double LEVEL_HEIGHT = 70; // расстояние м/у уровнями дерева
+    static final double TOP = 30; // отступ корня сверху
 
-    private RedBlackTree rbt;
-    private AVLTree avl;
+    // мелкий масштаб: колонка узла уже DETAIL_PX - поддеревья уже BLOCK_PX рисуются одним блоком с числом узлов
+    private static final double DETAIL_PX = 8;
+    private static final double BLOCK_PX = 48;
+    private static final double MAX_COLUMN = 120; // дальше приближать нет смысла
+    private static final Color RBT_BLOCK = Color.rgb(120, 40, 40, 0.35);
+    private static final Color AVL_BLOCK = Color.rgb(30, 50, 140, 0.35);
+    private static final Color[] RBT_FILL = {Color.RED, Color.BLACK}; // корзины узлов: красные, черные
+    private static final Color[] AVL_FILL = {Color.DARKBLUE, Color.DARKGREEN, Color.DARKRED}; // |bf| = 0, 1, больше (дисбаланс)
+    private static final Color[] AVL_BF = {Color.LIGHTGREEN, Color.YELLOW, Color.ORANGERED}; // цвет подписи bf в тех же корзинах
+    private static final Font KEY_FONT = Font.getDefault();
+    private static final Font BF_FONT = new Font(10); // один на все узлы, а не new Font на каждый
+
+    private TreeView<?> tree; // что показываем: для AVL лучше снимок
     private boolean isRbt;
+    private boolean shown = true; // скрытая вкладка раскладку не обновляет и не рисует, пока ее не откроют
+
+    // раскладка в массивах по inorder номеру узла (он же x), потомки - смещениями от номера,
+    // поэтому вставка или удаление сдвигает хвост массивов одним arraycopy, не трогая связи внутри него
+    private int n = 0; // узлов в раскладке
+    private int rootRank = -1;
+    private int[] key = new int[0];
+    private int[] depth = new int[0];
+    private int[] attr = new int[0]; // цвет (1 - красный) или balance factor
+    private int[] leftOff = new int[0], rightOff = new int[0]; // номер потомка = номер -/+ смещение, 0 - потомка нет
+    private int[] leftSize = new int[0], rightSize = new int[0]; // размеры поддеревьев потомков
+    private int[] height = new int[0];
+    private Object laidSource; // дерево, с которого снята раскладка (для снимков AVL - исходное)
+    private long laidMod; // и его modCount на тот момент
+    private byte[] dirs = new byte[64]; // путь к поменявшемуся поддереву
+    private int[] pathAttr = new int[64], otherAttr = new int[64];
+    private int[] stack = new int[64];
+    private Object[] walk = new Object[64]; // стек узлов дерева для inorder обхода
+    private int[] walkDepth = new int[64];
+
+    // буферы кадра: проход по видимой части складывает сюда координаты, потом все рисуется пачками -
+    // кисть и шрифт выставляются раз на пачку, а не на каждый узел
+    private double[] lines = new double[256]; // x1, y1, x2, y2
+    private int lineCount;
+    private double[] blocks = new double[160]; // x, y, ширина, высота, число узлов
+    private int blockCount;
+    private double[][] nodeXY = new double[3][128]; // по корзинам цвета: x, y
+    private int[][] nodeRank = new int[3][64];
+    private int[] bucketSize = new int[3];
+
+    private double zoom = 1; // 1 - все дерево по ширине холста, как раньше
+    private double offsetX = 0, offsetY = 0; // сдвиг вида, px
+    private double dragX, dragY; // где была мышь при прошлом событии перетаскивания
 
     public TreeCanvas(boolean isRbt) { // конструктор
         super(1000, 600);
         this.isRbt = isRbt;
+
+        // колесо - масштаб по x вокруг курсора, перетаскивание - сдвиг, двойной щелчок - все дерево целиком
+        setOnScroll(e -> {
+            double col = columnWidth();
+            if (col == 0) return;
+            double rank = (e.getX() - offsetX) / col; // номер колонки под курсором остается под курсором
+            double maxZoom = Math.max(1, MAX_COLUMN / (col / zoom));
+            zoom = Math.max(1, Math.min(maxZoom, zoom * Math.exp(e.getDeltaY() * 0.005)));
+            offsetX = e.getX() - rank * columnWidth();
+            if (zoom == 1) offsetX = 0;
+            draw();
+        });
+        setOnMousePressed(e -> {
+            dragX = e.getX();
+            dragY = e.getY();
+        });
+        setOnMouseDragged(e -> {
+            offsetX += e.getX() - dragX;
+            offsetY += e.getY() - dragY;
+            dragX = e.getX();
+            dragY = e.getY();
+            draw();
+        });
+        setOnMouseClicked(e -> {
+            if (e.getButton() == MouseButton.PRIMARY && e.getClickCount() == 2) {
+                zoom = 1;
+                offsetX = offsetY = 0;
+                draw();
+            }
+        });
     }
 
-    public void setTreeData(RedBlackTree rbt) { // пришло RBT - рисуем РБТ
-        this.rbt = rbt;
-        this.avl = null;
-        draw();
+    public void setTreeData(TreeView<?> tree) { // AVL лучше передавать avl.snapshot(): рисуется неизменяемая версия
+        this.tree = tree;
+        update();
     }
 
-    public void setTreeData(AVLTree avl) {
-        this.avl = avl;
-        this.rbt = null;
+    public void setShown(boolean shown) { // вкладку открыли - догоняем все изменения разом
+        this.shown = shown;
+        update();
+    }
+
+    private void update() {
+        if (!shown) return;
+        sync();
         draw();
     }
 
-    private void draw() { // основной метод отрисовки
+    private void sync() { // приводит раскладку к текущему дереву
+        Object source = tree == null ? null : tree.origin();
+        if (source == null) {
+            n = 0;
+            rootRank = -1;
+            laidSource = null;
+            return;
+        }
+        long mod = tree.getModCount();
+        if (source == laidSource && mod == laidMod) return; // ничего не поменялось
+        int len = 0; // 0 - все дерево заново
+        if (source == laidSource && mod == laidMod + 1) { // ровно одна операция - меняем только ее поддерево
+            len = tree.changedPath(dirs);
+        }
+        if (!relayout(tree, len) && !relayout(tree, 0)) { // раскладка не сошлась с деревом - не рисуем ничего
+            n = 0;
+            rootRank = -1;
+        }
+        laidSource = source;
+        laidMod = mod;
+    }
+
+    private <N> boolean relayout(TreeView<N> t, int len) { // заменяет в раскладке поддерево по пути dirs[0..len) его текущей версией
+        int lo = 0, hi = n, c = rootRank;
+        for (int j = 0; j < len; j++) { // спуск по старой раскладке: [lo, hi) - номера поддерева узла c
+            if (c < 0) return false;
+            if (dirs[j] == 0) {
+                hi = c;
+                c = leftOff[c] == 0 ? -1 : c - leftOff[c];
+            } else {
+                lo = c + 1;
+                c = rightOff[c] == 0 ? -1 : c + rightOff[c];
+            }
+        }
+        int total = t.getNodeCount();
+        int m = total - (n - (hi - lo)); // узлов в новой версии поддерева
+        if (m < 0) return false;
+        N sub = nodeAt(t, len);
+
+        ensureCapacity(total);
+        int tail = n - hi; // узлы правее поддерева только сдвигаются
+        for (int[] a : new int[][]{key, depth, attr, leftOff, rightOff, leftSize, rightSize, height}) {
+            System.arraycopy(a, hi, a, lo + m, tail);
+        }
+        n = lo + m + tail;
+        int end = inorder(t, sub, len, lo);
+        if (end != lo + m) return false;
+        c = link(lo, lo + m);
+
+        // подъем по пути: у предков меняются размер и ссылка на потомка со стороны поддерева, высота и цвет/bf
+        int clo = lo, chi = lo + m; // отрезок поддерева c
+        for (int j = len - 1; j >= 0; j--) {
+            int p;
+            if (dirs[j] == 0) { // поддерево - левое, родитель сразу за ним
+                p = chi;
+                leftOff[p] = c < 0 ? 0 : p - c;
+                leftSize[p] = chi - clo;
+                chi = p + rightSize[p] + 1;
+                if (rightOff[p] != 0) attr[p + rightOff[p]] = otherAttr[j];
+            } else {
+                p = clo - 1;
+                rightOff[p] = c < 0 ? 0 : c - p;
+                rightSize[p] = chi - clo;
+                clo = p - leftSize[p];
+                if (leftOff[p] != 0) attr[p - leftOff[p]] = otherAttr[j];
+            }
+            height[p] = 1 + Math.max(childHeight(p, leftOff[p], -1), childHeight(p, rightOff[p], 1));
+            attr[p] = pathAttr[j];
+            c = p;
+        }
+        rootRank = c;
+        return true;
+    }
+
+    private <N> N nodeAt(TreeView<N> t, int len) { // узел по пути dirs; заодно цвет/bf узлов пути и их потомков не на пути
+        N node = t.root();
+        for (int j = 0; j < len && node != null; j++) {
+            N other = dirs[j] == 0 ? t.right(node) : t.left(node);
+            pathAttr[j] = t.decoration(node);
+            otherAttr[j] = other == null ? 0 : t.decoration(other);
+            node = dirs[j] == 0 ? t.left(node) : t.right(node);
+        }
+        return node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <N> int inorder(TreeView<N> t, N node, int d, int i) { // итеративный inorder с номера i: ключ, глубина, цвет/bf; -1 - массивы кончились
+        int sp = 0;
+        while (node != null || sp > 0) {
+            for (; node != null; node = t.left(node), d++) { // спуск по левому краю, узлы - на стек
+                if (sp == walk.length) {
+                    walk = Arrays.copyOf(walk, sp * 2);
+                    walkDepth = Arrays.copyOf(walkDepth, sp * 2);
+                }
+                walk[sp] = node;
+                walkDepth[sp++] = d;
+            }
+            node = (N) walk[--sp];
+            d = walkDepth[sp];
+            if (i == key.length) {
+                i = -1;
+                break;
+            }
+            key[i] = t.key(node);
+            depth[i] = d;
+            attr[i] = t.decoration(node);
+            i++;
+            node = t.right(node);
+            d++;
+        }
+        Arrays.fill(walk, null); // не держим узлы старых версий дерева
+        return i;
+    }
+
+    private int link(int from, int to) { // связи, размеры и высоты в [from, to) по глубинам; возвращает корень отрезка
+        // родитель узла - более глубокий из ближайших слева и справа узлов с меньшей глубиной
+        int sp = 0;
+        for (int i = to - 1; i >= from; i--) { // справа налево: правые потомки
+            int last = -1;
+            while (sp > 0 && depth[stack[sp - 1]] > depth[i]) last = stack[--sp];
+            rightOff[i] = last < 0 ? 0 : last - i;
+            rightSize[i] = (sp > 0 ? stack[sp - 1] : to) - i - 1;
+            sp = push(sp, i);
+        }
+        sp = 0;
+        for (int i = from; ; i++) { // слева направо: левые потомки; снятый со стека узел уже пройден целиком - считаем высоту
+            int last = -1;
+            while (sp > 0 && (i == to || depth[stack[sp - 1]] > depth[i])) {
+                last = stack[--sp];
+                height[last] = 1 + Math.max(childHeight(last, leftOff[last], -1), childHeight(last, rightOff[last], 1));
+            }
+            if (i == to) return last;
+            leftOff[i] = last < 0 ? 0 : i - last;
+            leftSize[i] = i - (sp > 0 ? stack[sp - 1] + 1 : from);
+            sp = push(sp, i);
+        }
+    }
+
+    private int push(int sp, int i) {
+        if (sp == stack.length) stack = Arrays.copyOf(stack, sp * 2);
+        stack[sp] = i;
+        return sp + 1;
+    }
+
+    private int childHeight(int r, int off, int side) {
+        return off == 0 ? 0 : height[r + side * off];
+    }
+
+    private void ensureCapacity(int size) {
+        if (key.length >= size) return;
+        int cap = Math.max(size, key.length + key.length / 2);
+        key = Arrays.copyOf(key, cap);
+        depth = Arrays.copyOf(depth, cap);
+        attr = Arrays.copyOf(attr, cap);
+        leftOff = Arrays.copyOf(leftOff, cap);
+        rightOff = Arrays.copyOf(rightOff, cap);
+        leftSize = Arrays.copyOf(leftSize, cap);
+        rightSize = Arrays.copyOf(rightSize, cap);
+        height = Arrays.copyOf(height, cap);
+    }
+
+    private double columnWidth() { // ширина колонки одного узла (x - inorder номер узла)
+        return getWidth() / Math.max(1, n + 1) * zoom;
+    }
+
+    private double rowY(int depth) {
+        return offsetY + TreeExport.y(depth); // правила раскладки общие с экспортом
+    }
+
+    private void draw() { // перерисовка видимой части: проход по раскладке, затем рисование пачками
         GraphicsContext g = getGraphicsContext2D(); // объект для рисования
         double w = getWidth();
         double h = getHeight();
         g.clearRect(0,0,w,h);
+        if (rootRank < 0) return;
 
         try {
-            if (isRbt) { // ветка КЧД
-                if (rbt == null) return;
-                RedBlackTree.RBTNodeWrapper root = rbt.getRootWrapper();
-                if (root == null) return;
-                Map<RedBlackTree.RBTNodeWrapper, Integer> xMap = new HashMap<>(); // карта для хранения X-коорд. каждого узла
-                int[] x = {0}; // массив из одного элемента для передачи по ссылке
-                inorderAssignX(root, xMap, x); // inorder обходом назначаем X-координаты узлам
-                double colWidth = w / Math.max(1, x[0] + 1); // ширина одной "колонки" для узла.
-                drawEdgesRBT(g, root, xMap, colWidth); // связи между узлами
-                drawNodesRBT(g, root, xMap, colWidth); // сами узлы
-            } else {
-                if (avl == null) return; // avl дерево - аналогично
-                AVLTree.AVLNodeWrapper root = avl.getRootWrapper();
-                if (root == null) return;
-                Map<AVLTree.AVLNodeWrapper, Integer> xMap = new HashMap<>();
-                int[] x = {0};
-                inorderAssignXAVL(root, xMap, x);
-                double colWidth = w / Math.max(1, x[0] + 1);
-                drawEdgesAVL(g, root, xMap, colWidth);
-                drawNodesAVL(g, root, xMap, colWidth);
-            }
+            double colWidth = columnWidth();
+            collect(colWidth);
+            paint(g, colWidth);
         } catch (Exception e) {
             Alert a = new Alert(Alert.AlertType.ERROR);
             a.setHeaderText("Ошибка при рисовании");
@@ -68,152 +302,113 @@ public class TreeCanvas extends Canvas {
         }
     }
 
-    // методы для RBT
-    private void inorderAssignX(RedBlackTree.RBTNodeWrapper node,
-                                Map<RedBlackTree.RBTNodeWrapper,Integer> xMap,
-                                int[] xCounter) { // назначение x-индексов
-        if (node == null) return;
-        inorderAssignX(node.left, xMap, xCounter); // сначала обрабатываем левое поддерево; все узлы левого поддерева получат меньшие номера
-
-        xMap.put(node, xCounter[0]++); // текущему узлу даем следующий X
-        inorderAssignX(node.right, xMap, xCounter); // теперь с правым
-    }
+    private void collect(double colWidth) { // обходит только поддеревья, попадающие в окно, и складывает координаты в буферы кадра
+        lineCount = blockCount = 0;
+        Arrays.fill(bucketSize, 0);
+        double rad = nodeRadius(colWidth);
+        int sp = push(0, rootRank);
+        while (sp > 0) {
+            int r = stack[--sp];
+            double x0 = offsetX + (r - leftSize[r]) * colWidth; // поддерево занимает колонки [r - leftSize, r + rightSize]
+            double x1 = offsetX + (r + rightSize[r] + 1) * colWidth;
+            double y = rowY(depth[r]);
+            if (x1 < -NODE_RADIUS || x0 > getWidth() + NODE_RADIUS || y - NODE_RADIUS > getHeight()) continue; // целиком вне окна - внутрь не заходим
 
-    private void drawEdgesRBT(GraphicsContext g, // метод рисования связец
-                              RedBlackTree.RBTNodeWrapper node,
-                              Map<RedBlackTree.RBTNodeWrapper,Integer> xMap,
-                              double colWidth) {
-        if (node == null) return;
-        double x = (xMap.get(node)+0.5) * colWidth; // +0.5 чтобы узел был посередине колонки, а не у края
-        double y = 30 + node.depth * LEVEL_HEIGHT;
+            if (colWidth < DETAIL_PX && x1 - x0 <= BLOCK_PX) { // мелкий масштаб - поддерево одним блоком
+                addBlock(x0, x1, depth[r], height[r], leftSize[r] + rightSize[r] + 1);
+                continue;
+            }
 
-        if (node.left != null) { // линия к левому узлу
-            double lx = (xMap.get(node.left)+0.5) * colWidth; //x,y левого
-            double ly = 30 + node.left.depth * LEVEL_HEIGHT;
-            if (isPointInBounds(x, y) && isPointInBounds(lx, ly)) { // проверка границы для линий
-                g.setStroke(Color.GRAY); // оба конца линии должны быть в пределах canvas
-                g.strokeLine(x, y, lx, ly);
+            double x = offsetX + TreeExport.x(r, colWidth);
+            if (leftOff[r] != 0) {
+                int c = r - leftOff[r];
+                addLine(x, y, offsetX + TreeExport.x(c, colWidth), rowY(depth[c]));
+                sp = push(sp, c);
             }
-            drawEdgesRBT(g, node.left, xMap, colWidth);
-        }
-        if (node.right != null) { // аналогично для правого потомка
-            double rx = (xMap.get(node.right)+0.5) * colWidth;
-            double ry = 30 + node.right.depth * LEVEL_HEIGHT;
-            if (isPointInBounds(x, y) && isPointInBounds(rx, ry)) {
-                g.setStroke(Color.GRAY);
-                g.strokeLine(x, y, rx, ry);
+            if (rightOff[r] != 0) {
+                int c = r + rightOff[r];
+                addLine(x, y, offsetX + TreeExport.x(c, colWidth), rowY(depth[c]));
+                sp = push(sp, c);
             }
-            drawEdgesRBT(g, node.right, xMap, colWidth);
+            if (x + rad < 0 || x - rad > getWidth() || y + rad < 0) continue; // сам узел не виден
+            addNode(TreeExport.bucket(isRbt, attr[r]), r, x, y);
         }
     }
 
-    private void drawNodesRBT(GraphicsContext g, // рисование узлоа
-                              RedBlackTree.RBTNodeWrapper node,
-                              Map<RedBlackTree.RBTNodeWrapper,Integer> xMap,
-                              double colWidth) {
-        if (node == null) return;
-        drawNodesRBT(g, node.left, xMap, colWidth);
-
-        double x = (xMap.get(node)+0.5) * colWidth; // x y коорды
-        double y = 30 + node.depth * LEVEL_HEIGHT;
+    private void paint(GraphicsContext g, double colWidth) { // линии под кружками, кружки по цветам, затем подписи
+        g.setStroke(Color.GRAY);
+        for (int i = 0; i < lineCount; i += 4) g.strokeLine(lines[i], lines[i + 1], lines[i + 2], lines[i + 3]);
 
-        if (!isPointInBounds(x, y)) { // проверка на выход из границы
-            drawNodesRBT(g, node.right, xMap, colWidth);
-            return;
-        }
-
-        g.setFill(node.isRed ? Color.RED : Color.BLACK);
-        g.fillOval(x - NODE_RADIUS, y - NODE_RADIUS, NODE_RADIUS*2, NODE_RADIUS*2); // круг
-        g.setFill(Color.WHITE);
         g.setTextAlign(TextAlignment.CENTER);
-        g.setTextBaseline(VPos.CENTER);
-        g.fillText(String.valueOf(node.key), x, y);
-
-        drawNodesRBT(g, node.right, xMap, colWidth);
-    }
-
-    // методы для AVL
-    private void inorderAssignXAVL(AVLTree.AVLNodeWrapper node,
-                                   Map<AVLTree.AVLNodeWrapper, Integer> xMap,
-                                   int[] xCounter) { // аналогично КЧД - тот же алгоритм inorder-обхода для AVL оберток
-        if (node == null) return;
-        inorderAssignXAVL(node.left, xMap, xCounter);
-        xMap.put(node, xCounter[0]++);
-        inorderAssignXAVL(node.right, xMap, xCounter);
-    }
-
-    private void drawEdgesAVL(GraphicsContext g,
-                              AVLTree.AVLNodeWrapper node,
-                              Map<AVLTree.AVLNodeWrapper, Integer> xMap,
-                              double colWidth) { // рисуем связи
-        if (node == null) return;
-        double x = (xMap.get(node)+0.5) * colWidth;
-        double y = 30 + node.depth * LEVEL_HEIGHT;
-
-        if (node.left != null) {
-            double lx = (xMap.get(node.left)+0.5) * colWidth;
-            double ly = 30 + node.left.depth * LEVEL_HEIGHT;
-            if (isPointInBounds(x, y) && isPointInBounds(lx, ly)) {
-                g.setStroke(Color.GRAY);
-                g.strokeLine(x, y, lx, ly);
+        g.setFont(KEY_FONT);
+        if (blockCount > 0) {
+            g.setFill(isRbt ? RBT_BLOCK : AVL_BLOCK);
+            for (int i = 0; i < blockCount; i += 5) g.fillRect(blocks[i], blocks[i + 1], blocks[i + 2], blocks[i + 3]);
+            g.setFill(Color.BLACK);
+            g.setTextBaseline(VPos.TOP);
+            for (int i = 0; i < blockCount; i += 5) {
+                if (blocks[i + 2] < 24) continue; // число не влезет
+                g.fillText(String.valueOf((int) blocks[i + 4]), blocks[i] + blocks[i + 2] / 2, Math.max(blocks[i + 1], 0) + 2);
             }
-            drawEdgesAVL(g, node.left, xMap, colWidth);
-        }
-        if (node.right != null) {
-            double rx = (xMap.get(node.right)+0.5) * colWidth;
-            double ry = 30 + node.right.depth * LEVEL_HEIGHT;
-            if (isPointInBounds(x, y) && isPointInBounds(rx, ry)) {
-                g.setStroke(Color.GRAY);
-                g.strokeLine(x, y, rx, ry);
-            }
-            drawEdgesAVL(g, node.right, xMap, colWidth);
         }
-    }
 
-    private void drawNodesAVL(GraphicsContext g,
-                              AVLTree.AVLNodeWrapper node,
-                              Map<AVLTree.AVLNodeWrapper,Integer> xMap,
-                              double colWidth) { // рисум узлы
-        if (node == null) return;
-        drawNodesAVL(g, node.left, xMap, colWidth);
-
-        double x = (xMap.get(node)+0.5) * colWidth;
-        double y = 30 + node.depth * LEVEL_HEIGHT;
-
-        if (!isPointInBounds(x, y)) {
-            drawNodesAVL(g, node.right, xMap, colWidth);
-            return;
+        double rad = nodeRadius(colWidth);
+        Color[] fill = isRbt ? RBT_FILL : AVL_FILL;
+        for (int b = 0; b < fill.length; b++) {
+            g.setFill(fill[b]);
+            double[] xy = nodeXY[b];
+            for (int i = 0; i < bucketSize[b]; i++) g.fillOval(xy[2 * i] - rad, xy[2 * i + 1] - rad, rad * 2, rad * 2);
         }
+        if (!TreeExport.showKeys(isRbt, rad)) return; // ключ не влезет
 
-        // цвет узла зависит от баланс-фактора
-        Color nodeColor = Color.DARKBLUE; // по дефолту темно-синий для balanceFactor = 0
-        if (Math.abs(node.balanceFactor) > 1) {
-            nodeColor = Color.DARKRED;  // красный в случае дисбаланса
-        } else if (Math.abs(node.balanceFactor) == 1) {
-            nodeColor = Color.DARKGREEN;  //  баланс +-1
+        g.setFill(Color.WHITE);
+        g.setTextBaseline(VPos.CENTER);
+        double keyY = isRbt ? 0 : -5; // у AVL под ключом еще bf
+        for (int b = 0; b < fill.length; b++) {
+            double[] xy = nodeXY[b];
+            for (int i = 0; i < bucketSize[b]; i++) g.fillText(String.valueOf(key[nodeRank[b][i]]), xy[2 * i], xy[2 * i + 1] + keyY);
         }
+        if (isRbt) return;
 
-        g.setFill(nodeColor);
-        g.fillOval(x - NODE_RADIUS, y - NODE_RADIUS, NODE_RADIUS*2, NODE_RADIUS*2);
+        g.setFont(BF_FONT);
+        for (int b = 0; b < fill.length; b++) {
+            g.setFill(AVL_BF[b]);
+            double[] xy = nodeXY[b];
+            for (int i = 0; i < bucketSize[b]; i++) g.fillText("bf=" + attr[nodeRank[b][i]], xy[2 * i], xy[2 * i + 1] + 10);
+        }
+    }
 
-        // основной ключ
-        g.setFill(Color.WHITE);
-        g.setTextAlign(TextAlignment.CENTER);
-        g.setTextBaseline(VPos.CENTER);
-        g.fillText(String.valueOf(node.key), x, y - 5);
+    private void addLine(double x1, double y1, double x2, double y2) {
+        if (lineCount + 4 > lines.length) lines = Arrays.copyOf(lines, lines.length * 2);
+        lines[lineCount++] = x1;
+        lines[lineCount++] = y1;
+        lines[lineCount++] = x2;
+        lines[lineCount++] = y2;
+    }
 
-        // balance factor
-        Color bfColor = node.balanceFactor == 0 ? Color.LIGHTGREEN : // разный в зависимости от значения
-                Math.abs(node.balanceFactor) == 1 ? Color.YELLOW : Color.ORANGERED;
-        g.setFill(bfColor);
-        g.setFont(new javafx.scene.text.Font(10));
-        g.fillText("bf=" + node.balanceFactor, x, y + 10);
+    private void addBlock(double x0, double x1, int depth, int height, int count) { // поддерево на мелком масштабе
+        double top = rowY(depth) - NODE_RADIUS / 2;
+        double bottom = Math.min(getHeight(), rowY(depth + height - 1) + NODE_RADIUS / 2);
+        if (blockCount + 5 > blocks.length) blocks = Arrays.copyOf(blocks, blocks.length * 2);
+        blocks[blockCount++] = x0;
+        blocks[blockCount++] = top;
+        blocks[blockCount++] = Math.max(1, x1 - x0 - 1); // зазор в пиксель между соседними блоками
+        blocks[blockCount++] = bottom - top;
+        blocks[blockCount++] = count;
+    }
 
-        drawNodesAVL(g, node.right, xMap, colWidth);
+    private void addNode(int bucket, int rank, double x, double y) {
+        int i = bucketSize[bucket]++;
+        if (i == nodeRank[bucket].length) {
+            nodeRank[bucket] = Arrays.copyOf(nodeRank[bucket], i * 2);
+            nodeXY[bucket] = Arrays.copyOf(nodeXY[bucket], i * 4);
+        }
+        nodeRank[bucket][i] = rank;
+        nodeXY[bucket][2 * i] = x;
+        nodeXY[bucket][2 * i + 1] = y;
     }
 
-    private boolean isPointInBounds(double x, double y) { // метод для проверки границ
-        return x >= NODE_RADIUS && x <= getWidth() - NODE_RADIUS &&
-                y >= NODE_RADIUS && y <= getHeight() - NODE_RADIUS;
+    private double nodeRadius(double colWidth) {
+        return TreeExport.nodeRadius(colWidth);
     }
-}
\ No newline at end of file
+}
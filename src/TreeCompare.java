@@ -1,8 +1,135 @@
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
 
 public class TreeCompare {
 
+    public interface Progress { // отчет о завершенном повторе; зовется между замерами, не внутри них
+        void step(int done, int total, String text);
+    }
+
+    private static final Progress SILENT = (done, total, text) -> {};
+    private Progress progress = SILENT;
+    private int workers = 1; // 1 - повторы по очереди; больше - независимые повторы на пуле потоков
+    private volatile SampleChannel samples; // null - замеряемый цикл идет одним куском, без образцов
+
+    public static final int SAMPLE_EVERY = 10_000; // операций между образцами
+
+    public void setProgress(Progress progress) {this.progress = progress == null ? SILENT : progress;}
+
+    public void setWorkers(int workers) { // не больше потока на ядро: лишние потоки делили бы ядра и портили замеры друг другу
+        this.workers = Math.max(1, Math.min(workers, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public int getWorkers() {return workers;}
+
+    public void setSamples(SampleChannel samples) {this.samples = samples;}
+
+    private synchronized void step(int done, int total, String text) {
+        checkCancelled();
+        progress.step(done, total, text);
+        checkCancelled();
+    }
+
+    private static void checkCancelled() { // прерванный поток (Task.cancel в UI) - бросаем тест между замерами
+        if (Thread.currentThread().isInterrupted()) throw new CancellationException("тест отменен");
+    }
+
+    // ---------- образцы метрик по ходу прогона ----------
+
+    public static final class Sample { // метрики одного дерева за последние SAMPLE_EVERY операций
+        public final boolean rbt;
+        public final int repetition;
+        public final int ops; // операций с начала повтора
+        public final int intervalOps; // операций в интервале (последний интервал бывает короче)
+        public final long intervalNs;
+        public final int rotations; // поворотов за интервал
+        public final int height; // высота дерева в конце интервала - из корня за O(1), обхода дерева на образец нет
+        public final long gcCount; // сборок мусора за интервал (счетчик общий на JVM)
+        public final long gcPauseMs;
+
+        Sample(boolean rbt, int repetition, int ops, int intervalOps, long intervalNs,
+               int rotations, int height, long gcCount, long gcPauseMs) {
+            this.rbt = rbt;
+            this.repetition = repetition;
+            this.ops = ops;
+            this.intervalOps = intervalOps;
+            this.intervalNs = intervalNs;
+            this.rotations = rotations;
+            this.height = height;
+            this.gcCount = gcCount;
+            this.gcPauseMs = gcPauseMs;
+        }
+
+        public double opsPerSec() {return intervalOps / (Math.max(1, intervalNs) / 1e9);}
+        public double rotationsPerOp() {return rotations / (double) Math.max(1, intervalOps);}
+    }
+
+    // кольцо фиксированного размера от замеряющих потоков (их может быть несколько) к одному читателю без блокировок:
+    // писатель занимает ячейку CAS-ом и никогда не ждет - если читатель отстал и кольцо полное, образец отбрасывается
+    public static final class SampleChannel {
+        private final AtomicReferenceArray<Sample> ring;
+        private final AtomicLong tail = new AtomicLong(); // следующая свободная ячейка (пишут замеряющие потоки)
+        private final AtomicLong head = new AtomicLong(); // следующая непрочитанная (только читатель)
+        private final AtomicLong dropped = new AtomicLong();
+
+        public SampleChannel(int capacity) {
+            ring = new AtomicReferenceArray<>(capacity);
+        }
+
+        boolean offer(Sample s) {
+            while (true) {
+                long t = tail.get();
+                if (t - head.get() >= ring.length()) { // полное
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                if (tail.compareAndSet(t, t + 1)) {
+                    ring.set((int) (t % ring.length()), s); // после этой записи читатель увидит образец
+                    return true;
+                }
+            }
+        }
+
+        public int drain(List<Sample> to) { // забирает все опубликованные образцы; ячейку, занятую, но еще не записанную, подождет следующий вызов
+            int n = 0;
+            for (long h = head.get(); ; h++, n++) {
+                int i = (int) (h % ring.length());
+                Sample s = ring.get(i);
+                if (s == null) {
+                    head.set(h);
+                    return n;
+                }
+                ring.set(i, null);
+                to.add(s);
+            }
+        }
+
+        public long getDropped() {return dropped.get();}
+    }
+
     public static class ComparisonResult { // хранение результатов сравнения
         public final double rbtTime;
         public final double avlTime;
@@ -11,10 +138,30 @@ public class TreeCompare {
         public final double rbtHeight;
         public final double avlHeight;
         public final double timeRatio;
+        public final Latency rbtLatency; // задержки отдельных операций (отдельный проход, на суммарное время не влияет)
+        public final Latency avlLatency;
+        public final Memory rbtMemory; // выделения, сборки мусора и живая куча
+        public final Memory avlMemory;
 
-        public ComparisonResult(double rbtTime, double avlTime, // конструктор
+        public ComparisonResult(double rbtTime, double avlTime, // без задержек по операциям
                                 double rbtRotations, double avlRotations,
                                 double rbtHeight, double avlHeight) {
+            this(rbtTime, avlTime, rbtRotations, avlRotations, rbtHeight, avlHeight, new Latency(), new Latency());
+        }
+
+        public ComparisonResult(double rbtTime, double avlTime, // конструктор
+                                double rbtRotations, double avlRotations,
+                                double rbtHeight, double avlHeight,
+                                Latency rbtLatency, Latency avlLatency) {
+            this(rbtTime, avlTime, rbtRotations, avlRotations, rbtHeight, avlHeight, rbtLatency, avlLatency,
+                    Memory.NONE, Memory.NONE);
+        }
+
+        public ComparisonResult(double rbtTime, double avlTime,
+                                double rbtRotations, double avlRotations,
+                                double rbtHeight, double avlHeight,
+                                Latency rbtLatency, Latency avlLatency,
+                                Memory rbtMemory, Memory avlMemory) {
             this.rbtTime = rbtTime;
             this.avlTime = avlTime;
             this.rbtRotations = rbtRotations;
@@ -22,125 +169,687 @@ public class TreeCompare {
             this.rbtHeight = rbtHeight;
             this.avlHeight = avlHeight;
             this.timeRatio = avlTime / rbtTime;
+            this.rbtLatency = rbtLatency;
+            this.avlLatency = avlLatency;
+            this.rbtMemory = rbtMemory;
+            this.avlMemory = avlMemory;
+        }
+    }
+
+    public static class Latency { // гистограммы задержек одного дерева по видам операций, нс
+        public final LatencyHistogram insert = new LatencyHistogram();
+        public final LatencyHistogram delete = new LatencyHistogram();
+        public final LatencyHistogram contains = new LatencyHistogram();
+
+        public void add(Latency other) {
+            insert.add(other.insert);
+            delete.add(other.delete);
+            contains.add(other.contains);
         }
     }
 
-    public ComparisonResult compareInsert(int N, int repetitions) { // тест вставки
-        long totalRBTTimeInsert = 0, totalAVLTimeInsert = 0;
-        long totalRBTRot = 0, totalAVLRot = 0;
-        int rbtHeight = 0, avlHeight = 0;
+    public static class Memory { // память одного дерева; NaN - не замерялось или JVM не умеет
+        public static final Memory NONE = new Memory(Double.NaN, Double.NaN, Double.NaN, Double.NaN);
 
-        for (int r = 0; r < repetitions; r++) { // цикл повторений
-            RedBlackTree rtree = new RedBlackTree(); // новые деревья
-            AVLTree atree = new AVLTree();
+        public final double bytesPerOp; // выделено за замеряемое окно на одну операцию (счетчик своего потока)
+        public final double gcCount; // сборок мусора за окно, среднее по повторам
+        public final double gcPauseMs; // их суммарное время, мс
+        public final double retainedPerNode; // байт живой кучи на узел после прогона
 
-            rtree.resetRotations();
-            atree.resetRotations();
+        public Memory(double bytesPerOp, double gcCount, double gcPauseMs, double retainedPerNode) {
+            this.bytesPerOp = bytesPerOp;
+            this.gcCount = gcCount;
+            this.gcPauseMs = gcPauseMs;
+            this.retainedPerNode = retainedPerNode;
+        }
+    }
 
-            Random rnd = new Random(System.currentTimeMillis() + r); // текущее время + повторение
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
 
-            ArrayList<Integer> keys = new ArrayList<>(N); // список ключей емкости N
-            for (int i = 0; i < N; i++) keys.add(rnd.nextInt(1000000));
+    private static com.sun.management.ThreadMXBean threadBean() { // null - не HotSpot, счетчика выделений нет
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+        com.sun.management.ThreadMXBean hs = (com.sun.management.ThreadMXBean) bean;
+        if (!hs.isThreadAllocatedMemorySupported()) return null;
+        hs.setThreadAllocatedMemoryEnabled(true);
+        return hs;
+    }
 
-            // вставка RBT
-            long t0 = System.nanoTime();
-            for (int k : keys) rtree.insert(k);
-            long t1 = System.nanoTime();
-            totalRBTTimeInsert += (t1 - t0);
-            totalRBTRot += rtree.getRotations();
-            rbtHeight += rtree.getHeight();
-
-            // вставка AVL
-            long ta0 = System.nanoTime();
-            for (int k : keys) atree.insert(k);
-            long ta1 = System.nanoTime();
-            totalAVLTimeInsert += (ta1 - ta0);
-            totalAVLRot += atree.getRotations();
-            avlHeight += atree.getHeight();
-        }
-
-        return new ComparisonResult(
-                totalRBTTimeInsert / repetitions / 1_000_000.0, // преобразуем в мс и усредняем
-                totalAVLTimeInsert / repetitions / 1_000_000.0,
-                totalRBTRot / (double) repetitions, // усредняем повороты
-                totalAVLRot / (double) repetitions,
-                rbtHeight / (double) repetitions, // усредняем высоту
-                avlHeight / (double) repetitions
-        );
-    }
-
-    public ComparisonResult compareMixedOperations(int N, int repetitions) { // смешанные операции
-        long totalRBTTime = 0, totalAVLTime = 0;
-        long totalRBTRot = 0, totalAVLRot = 0;
-        int rbtHeight = 0, avlHeight = 0;
+    private static long allocatedBytes() { // байт, выделенных текущим потоком с его старта; -1 - не умеем
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    private static long[] gcTotals() { // {сборок, мс} по всем сборщикам - счетчики общие на JVM, не на поток
+        long count = 0, time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[] {count, time};
+    }
+
+    private static long usedHeap() { // после полной сборки - приблизительно живые объекты
+        System.gc();
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private double retainedPerNode(boolean rbt, boolean array, Workload w) { // отдельный проход без замера времени: сколько куча держит на узел
+        // на маленьких N шум кучи (регионы G1, JIT) сравним с самим деревом - строим несколько одинаковых, всего ~10^6 узлов
+        int copies = (int) Math.max(1, 1_000_000L / Math.max(1, w.initial.length + w.size()));
+        IntTree[] trees = new IntTree[copies];
+        long nodes = 0;
+        checkCancelled(); // Cancel в UI - не ждем две полные сборки и все копии
+        long before = usedHeap();
+        for (int c = 0; c < copies; c++) {
+            checkCancelled();
+            IntTree tree = newTree(rbt, array); // у деревьев на массивах в замер входит и запас емкости массивов
+            replay(w, tree);
+            nodes += tree.getNodeCount();
+            trees[c] = tree;
+        }
+        checkCancelled();
+        long after = usedHeap();
+        Reference.reachabilityFence(trees); // деревья должны дожить до второго замера
+        checkCancelled();
+        return nodes == 0 ? Double.NaN : (after - before) / (double) nodes;
+    }
+
+    private static IntTree newTree(boolean rbt, boolean array) {
+        if (array) return rbt ? new ArrayRedBlackTree() : new ArrayAVLTree();
+        return rbt ? new RedBlackTree() : new AVLTree();
+    }
+
+    private static void replay(Workload w, IntTree tree) { // только изменения - поиск на память не влияет
+        for (int k : w.initial) tree.insert(k);
+        for (int i = 0; i < w.ops.length; i++) {
+            if (w.ops[i] == Workload.INSERT) tree.insert(w.keys[i]);
+            else if (w.ops[i] == Workload.DELETE) tree.delete(w.keys[i]);
+        }
+    }
+
+    private static long timerOverhead = -1;
+    private final LongAdder sink = new LongAdder(); // сюда складываются результаты contains, чтобы JIT не выбросил поиск; пишут все рабочие потоки
+
+    static long timerOverhead() { // цена пустого замера nanoTime()..nanoTime() - вычитается из каждой задержки
+        if (timerOverhead < 0) {
+            LatencyHistogram h = new LatencyHistogram();
+            for (int i = 0; i < 200_000; i++) {
+                long t0 = System.nanoTime();
+                long t1 = System.nanoTime();
+                h.record(t1 - t0);
+            }
+            timerOverhead = h.percentile(50);
+        }
+        return timerOverhead;
+    }
+
+    private void recordLatencies(IntTree tree, int[] ops, int[] keys, Latency lat) { // каждая операция замеряется отдельно
+        long overhead = timerOverhead();
+        long hits = 0;
+        for (int i = 0; i < ops.length; i++) {
+            int key = keys[i];
+            long t0, t1;
+            switch (ops[i]) {
+                case Workload.INSERT:
+                    t0 = System.nanoTime();
+                    tree.insert(key);
+                    t1 = System.nanoTime();
+                    lat.insert.record(t1 - t0 - overhead);
+                    break;
+                case Workload.DELETE:
+                    t0 = System.nanoTime();
+                    tree.delete(key);
+                    t1 = System.nanoTime();
+                    lat.delete.record(t1 - t0 - overhead);
+                    break;
+                default:
+                    t0 = System.nanoTime();
+                    boolean found = tree.contains(key);
+                    t1 = System.nanoTime();
+                    lat.contains.record(t1 - t0 - overhead);
+                    if (found) hits++;
+                    break;
+            }
+        }
+        sink.add(hits);
+    }
 
+    public static class BatchComparisonResult { // вставка по одному ключу против insertAll теми же партиями
+        public final ComparisonResult perKey;
+        public final ComparisonResult batched;
+        public final int batchSize;
+        public final double rbtSpeedup; // во сколько раз insertAll быстрее цикла insert
+        public final double avlSpeedup;
+
+        public BatchComparisonResult(ComparisonResult perKey, ComparisonResult batched, int batchSize) {
+            this.perKey = perKey;
+            this.batched = batched;
+            this.batchSize = batchSize;
+            this.rbtSpeedup = perKey.rbtTime / batched.rbtTime;
+            this.avlSpeedup = perKey.avlTime / batched.avlTime;
+        }
+    }
+
+    public BatchComparisonResult compareBatchInsert(int N, int repetitions, int batchSize) { // тест пакетной вставки
+        List<Supplier<long[]>> tasks = new ArrayList<>();
+        AtomicInteger done = new AtomicInteger();
+        long seed = System.currentTimeMillis();
         for (int r = 0; r < repetitions; r++) {
-            RedBlackTree rtree = new RedBlackTree();
-            AVLTree atree = new AVLTree();
-            Random rnd = new Random(System.currentTimeMillis() + r);
+            int rep = r;
+            tasks.add(() -> batchRepetition(N, batchSize, seed + rep, rep, repetitions, done));
+        }
+        long[] time = new long[4]; // RBT по одному, AVL по одному, RBT партиями, AVL партиями
+        long[] rot = new long[4];
+        long[] height = new long[4];
+        for (long[] res : runAll(tasks)) {
+            for (int i = 0; i < 4; i++) {
+                time[i] += res[i];
+                rot[i] += res[4 + i];
+                height[i] += res[8 + i];
+            }
+        }
+
+        ComparisonResult perKey = new ComparisonResult(
+                time[0] / repetitions / 1_000_000.0, time[1] / repetitions / 1_000_000.0,
+                rot[0] / (double) repetitions, rot[1] / (double) repetitions,
+                height[0] / (double) repetitions, height[1] / (double) repetitions);
+        ComparisonResult batched = new ComparisonResult(
+                time[2] / repetitions / 1_000_000.0, time[3] / repetitions / 1_000_000.0,
+                rot[2] / (double) repetitions, rot[3] / (double) repetitions,
+                height[2] / (double) repetitions, height[3] / (double) repetitions);
+        return new BatchComparisonResult(perKey, batched, batchSize);
+    }
+
+    private long[] batchRepetition(int N, int batchSize, long seed, int r, int repetitions, AtomicInteger done) { // время, повороты, высота - по 4 значения
+        checkCancelled();
+        Random rnd = new Random(seed);
+        int[] keys = new int[N];
+        for (int i = 0; i < N; i++) keys[i] = rnd.nextInt(1000000);
+        int[][] batches = new int[(N + batchSize - 1) / batchSize][]; // нарезаем партии заранее, вне замера
+        for (int b = 0; b < batches.length; b++) {
+            batches[b] = Arrays.copyOfRange(keys, b * batchSize, Math.min(N, (b + 1) * batchSize));
+        }
+        long[] res = new long[12];
+
+        RedBlackTree rtree = new RedBlackTree();
+        long t0 = System.nanoTime();
+        for (int k : keys) rtree.insert(k);
+        res[0] = System.nanoTime() - t0;
+        res[4] = rtree.getRotations();
+        res[8] = rtree.getHeight();
+
+        AVLTree atree = new AVLTree();
+        t0 = System.nanoTime();
+        for (int k : keys) atree.insert(k);
+        res[1] = System.nanoTime() - t0;
+        res[5] = atree.getRotations();
+        res[9] = atree.getHeight();
+
+        // партии - те же ключи; повторы внутри одной партии insertAll вставляет один раз
+        RedBlackTree rbatch = new RedBlackTree();
+        t0 = System.nanoTime();
+        for (int[] batch : batches) rbatch.insertAll(batch);
+        res[2] = System.nanoTime() - t0;
+        res[6] = rbatch.getRotations();
+        res[10] = rbatch.getHeight();
+
+        AVLTree abatch = new AVLTree();
+        t0 = System.nanoTime();
+        for (int[] batch : batches) abatch.insertAll(batch);
+        res[3] = System.nanoTime() - t0;
+        res[7] = abatch.getRotations();
+        res[11] = abatch.getHeight();
 
-            ArrayList<Integer> initialKeys = new ArrayList<>(); // хранение начальных ключей
-            for (int i = 0; i < N / 2; i++) {
+        step(done.incrementAndGet(), repetitions, String.format("Повтор %d/%d: RBT по одному= %.3f мс, партиями= %.3f мс; AVL по одному= %.3f мс, партиями= %.3f мс",
+                r + 1, repetitions, res[0] / 1e6, res[2] / 1e6, res[1] / 1e6, res[3] / 1e6));
+        return res;
+    }
+
+    public static class AugmentationResult { // цена поддержки размеров поддеревьев (rank/select) на обновлениях
+        public final double rbtPlainTime; // мс
+        public final double rbtAugmentedTime;
+        public final double avlPlainTime;
+        public final double avlAugmentedTime;
+        public final double rbtOverhead; // замедление в процентах
+        public final double avlOverhead;
+
+        public AugmentationResult(double rbtPlainTime, double rbtAugmentedTime,
+                                  double avlPlainTime, double avlAugmentedTime) {
+            this.rbtPlainTime = rbtPlainTime;
+            this.rbtAugmentedTime = rbtAugmentedTime;
+            this.avlPlainTime = avlPlainTime;
+            this.avlAugmentedTime = avlAugmentedTime;
+            this.rbtOverhead = (rbtAugmentedTime / rbtPlainTime - 1) * 100;
+            this.avlOverhead = (avlAugmentedTime / avlPlainTime - 1) * 100;
+        }
+    }
+
+    public AugmentationResult compareAugmentation(int N, int repetitions) { // вставка N ключей и удаление половины
+        List<Supplier<long[]>> tasks = new ArrayList<>();
+        AtomicInteger done = new AtomicInteger();
+        long seed = System.currentTimeMillis();
+        for (int r = 0; r < repetitions; r++) {
+            int rep = r;
+            tasks.add(() -> { // RBT, RBT с размерами, AVL, AVL с размерами
+                checkCancelled();
+                Random rnd = new Random(seed + rep);
+                int[] keys = new int[N];
+                for (int i = 0; i < N; i++) keys[i] = rnd.nextInt(1000000);
+
+                long[] t = {
+                        timeUpdates(new RedBlackTree(false), keys), timeUpdates(new RedBlackTree(true), keys),
+                        timeUpdates(new AVLTree(false), keys), timeUpdates(new AVLTree(true), keys)};
+                step(done.incrementAndGet(), repetitions, String.format("Повтор %d/%d: RBT= %.3f / %.3f мс, AVL= %.3f / %.3f мс (без размеров / с размерами)",
+                        rep + 1, repetitions, t[0] / 1e6, t[1] / 1e6, t[2] / 1e6, t[3] / 1e6));
+                return t;
+            });
+        }
+        long[] time = new long[4];
+        for (long[] t : runAll(tasks)) {
+            for (int i = 0; i < 4; i++) time[i] += t[i];
+        }
+
+        return new AugmentationResult(
+                time[0] / repetitions / 1_000_000.0, time[1] / repetitions / 1_000_000.0,
+                time[2] / repetitions / 1_000_000.0, time[3] / repetitions / 1_000_000.0);
+    }
+
+    private long timeUpdates(RedBlackTree tree, int[] keys) {
+        long t0 = System.nanoTime();
+        for (int k : keys) tree.insert(k);
+        for (int i = 0; i < keys.length; i += 2) tree.delete(keys[i]);
+        return System.nanoTime() - t0;
+    }
+
+    private long timeUpdates(AVLTree tree, int[] keys) {
+        long t0 = System.nanoTime();
+        for (int k : keys) tree.insert(k);
+        for (int i = 0; i < keys.length; i += 2) tree.delete(keys[i]);
+        return System.nanoTime() - t0;
+    }
+
+    public static class ScalingResult { // пропускная способность ConcurrentTree и ShardedTree в зависимости от числа потоков
+        public final int[] threads;
+        public final double[] rbtOpsPerSec;
+        public final double[] avlOpsPerSec;
+        public final double[] shardedRbtOpsPerSec; // шардов столько же, сколько потоков; границы - по квантилям начальных ключей
+        public final double[] shardedAvlOpsPerSec;
+        public final int writePercent;
+
+        public ScalingResult(int[] threads, double[] rbtOpsPerSec, double[] avlOpsPerSec,
+                             double[] shardedRbtOpsPerSec, double[] shardedAvlOpsPerSec, int writePercent) {
+            this.threads = threads;
+            this.rbtOpsPerSec = rbtOpsPerSec;
+            this.avlOpsPerSec = avlOpsPerSec;
+            this.shardedRbtOpsPerSec = shardedRbtOpsPerSec;
+            this.shardedAvlOpsPerSec = shardedAvlOpsPerSec;
+            this.writePercent = writePercent;
+        }
+    }
+
+    public ScalingResult compareConcurrentReads(int N, int maxThreads, int opsPerThread, int writePercent) {
+        int steps = 32 - Integer.numberOfLeadingZeros(Math.max(1, maxThreads)); // 1, 2, 4, ... <= maxThreads
+        int[] threads = new int[steps];
+        for (int i = 0; i < steps; i++) threads[i] = 1 << i;
+        double[] rbt = new double[steps];
+        double[] avl = new double[steps];
+        double[] shardedRbt = new double[steps];
+        double[] shardedAvl = new double[steps];
+
+        Random rnd = new Random(System.currentTimeMillis());
+        int[] initial = new int[N];
+        for (int i = 0; i < N; i++) initial[i] = rnd.nextInt(1000000);
+
+        for (int i = 0; i < steps; i++) {
+            ConcurrentTree crbt = new ConcurrentTree(RedBlackTree.fromSorted(initial));
+            rbt[i] = runConcurrent(crbt::insert, crbt::delete, crbt::contains, threads[i], opsPerThread, writePercent);
+            ConcurrentTree cavl = new ConcurrentTree(AVLTree.fromSorted(initial));
+            avl[i] = runConcurrent(cavl::insert, cavl::delete, cavl::contains, threads[i], opsPerThread, writePercent);
+            int[] splits = ShardedTree.splitPoints(initial, threads[i]); // ключи 0..1e6 - равные доли всего int попали бы в один шард
+            try (ShardedTree srbt = new ShardedTree(splits, RedBlackTree::new)) {
+                srbt.insertAll(initial);
+                shardedRbt[i] = runConcurrent(srbt::insert, srbt::delete, srbt::contains, threads[i], opsPerThread, writePercent);
+            }
+            try (ShardedTree savl = new ShardedTree(splits, AVLTree::new)) {
+                savl.insertAll(initial);
+                shardedAvl[i] = runConcurrent(savl::insert, savl::delete, savl::contains, threads[i], opsPerThread, writePercent);
+            }
+            step(i + 1, steps, String.format("Потоков: %d, RBT (млн оп/с)= %.2f, AVL (млн оп/с)= %.2f; шарды: RBT= %.2f, AVL= %.2f",
+                    threads[i], rbt[i] / 1e6, avl[i] / 1e6, shardedRbt[i] / 1e6, shardedAvl[i] / 1e6));
+        }
+        return new ScalingResult(threads, rbt, avl, shardedRbt, shardedAvl, writePercent);
+    }
+
+    // операции через ссылки на методы - одна и та же нагрузка для ConcurrentTree и ShardedTree
+    private double runConcurrent(IntConsumer insert, IntConsumer delete, IntPredicate contains,
+                                 int threadCount, int opsPerThread, int writePercent) {
+        int[][] ops = new int[threadCount][opsPerThread]; // ключи заранее; старший бит - признак записи
+        for (int t = 0; t < threadCount; t++) {
+            Random rnd = new Random(System.nanoTime() + t);
+            for (int i = 0; i < opsPerThread; i++) {
                 int key = rnd.nextInt(1000000);
-                initialKeys.add(key);
-                rtree.insert(key);
-                atree.insert(key);
+                ops[t][i] = rnd.nextInt(100) < writePercent ? key | 0x80000000 : key;
+            }
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threadCount];
+        long[] found = new long[threadCount]; // результаты contains сохраняем, чтобы JIT не выбросил поиск
+        for (int t = 0; t < threadCount; t++) {
+            int[] my = ops[t];
+            int id = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long hits = 0;
+                boolean inserting = true;
+                for (int op : my) {
+                    if (op < 0) { // запись: вставки и удаления по очереди, размер дерева почти не меняется
+                        if (inserting) insert.accept(op & 0x7FFFFFFF);
+                        else delete.accept(op & 0x7FFFFFFF);
+                        inserting = !inserting;
+                    } else if (contains.test(op)) {
+                        hits++;
+                    }
+                }
+                found[id] = hits;
+            });
+            workers[t].start();
+        }
+
+        long t0 = System.nanoTime();
+        start.countDown();
+        for (Thread w : workers) {
+            try {
+                w.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             }
+        }
+        long elapsed = System.nanoTime() - t0;
+        return (double) threadCount * opsPerThread / (elapsed / 1_000_000_000.0);
+    }
 
-            rtree.resetRotations(); // сбрасываем счетчики поворотов дабы считать только тестовые операции
-            atree.resetRotations();
+    public static class JournalResult { // цена журнала: оп/с без журнала, без fsync и с групповой фиксацией
+        public final TreeJournal.Mode[] modes;
+        public final double[] rbtOpsPerSec;
+        public final double[] avlOpsPerSec;
 
-            ArrayList<Integer> operations = new ArrayList<>(); // список типов операвий
-            ArrayList<Integer> operationKeys = new ArrayList<>(); // список ключей
+        public JournalResult(TreeJournal.Mode[] modes, double[] rbtOpsPerSec, double[] avlOpsPerSec) {
+            this.modes = modes;
+            this.rbtOpsPerSec = rbtOpsPerSec;
+            this.avlOpsPerSec = avlOpsPerSec;
+        }
+    }
 
-            for (int i = 0; i < N; i++) {
-                int op = rnd.nextInt(10); // генерим рандомную операцию
-                if (op < 4) operations.add(0); // 40% вставка(0 1 2 3)
-                else if (op < 7) operations.add(1); // 30% удаление(4 5 6)
-                else operations.add(2); // 30% поиск (7 8 9)
-                operationKeys.add(rnd.nextInt(1000000)); // генерим ключи
+    public JournalResult compareJournal(int N, int repetitions) throws IOException { // N вставок и N/2 удалений через TreeJournal
+        TreeJournal.Mode[] modes = TreeJournal.Mode.values();
+        double[] rbt = new double[modes.length];
+        double[] avl = new double[modes.length];
+
+        for (int r = 0; r < repetitions; r++) {
+            Random rnd = new Random(System.currentTimeMillis() + r);
+            int[] keys = new int[N];
+            for (int i = 0; i < N; i++) keys[i] = rnd.nextInt(1000000);
+
+            StringBuilder line = new StringBuilder("Повтор " + (r + 1) + "/" + repetitions + ", тыс. оп/с RBT/AVL:");
+            for (int m = 0; m < modes.length; m++) {
+                double ro = timeJournal(new RedBlackTree(), modes[m], keys);
+                double ao = timeJournal(new AVLTree(), modes[m], keys);
+                rbt[m] += ro;
+                avl[m] += ao;
+                line.append(String.format(" %s= %.1f/%.1f", modes[m], ro / 1e3, ao / 1e3));
             }
+            step(r + 1, repetitions, line.toString());
+        }
+        for (int m = 0; m < modes.length; m++) {
+            rbt[m] /= repetitions;
+            avl[m] /= repetitions;
+        }
+        return new JournalResult(modes, rbt, avl);
+    }
 
-            // операции RBT
+    private double timeJournal(SearchTree tree, TreeJournal.Mode mode, int[] keys) throws IOException {
+        Path dir = Files.createTempDirectory("tree-journal");
+        try {
             long t0 = System.nanoTime();
-            for (int i = 0; i < operations.size(); i++) {
-                int op = operations.get(i); // получаем операцию и значение ключа
-                int key = operationKeys.get(i);
-                switch (op) {
-                    case 0: rtree.insert(key); break;
-                    case 1: rtree.delete(key); break;
-                    case 2: rtree.contains(key); break;
+            try (TreeJournal journal = new TreeJournal(tree, dir, mode)) { // close() фиксирует хвост - входит в замер
+                for (int k : keys) journal.insert(k);
+                for (int i = 0; i < keys.length; i += 2) journal.delete(keys[i]);
+            }
+            long elapsed = System.nanoTime() - t0;
+            return (keys.length + (keys.length + 1) / 2) / (elapsed / 1_000_000_000.0);
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path f : files) Files.delete(f);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    public ComparisonResult compareInsert(int N, int repetitions) { // тест вставки; один холодный проход - для точных цифр модуль benchmarks (JMH)
+        return compareWorkload(Workload.generate(Workload.Pattern.UNIFORM, 0, N,
+                Workload.OpMix.INSERT_ONLY, System.currentTimeMillis()), repetitions);
+    }
+
+    public ComparisonResult compareMixedOperations(int N, int repetitions) { // смешанные операции: N/2 ключей заранее, затем 40/30/30
+        return compareWorkload(Workload.generate(Workload.Pattern.UNIFORM, N / 2, N,
+                Workload.OpMix.MIXED, System.currentTimeMillis()), repetitions);
+    }
+
+    public ComparisonResult compareInsert(Workload w, int repetitions) { // любой поток ключей вместо равномерного
+        return compareWorkload(w, repetitions);
+    }
+
+    public ComparisonResult compareMixedOperations(Workload w, int repetitions) {
+        return compareWorkload(w, repetitions);
+    }
+
+    public ComparisonResult compareWorkload(Workload w, int repetitions) { // w.initial вставляется до замера, w.ops замеряются
+        List<Supplier<RepResult>> tasks = new ArrayList<>();
+        AtomicInteger done = new AtomicInteger();
+        for (int r = 0; r < repetitions; r++) { // поток один и тот же - повторы усредняют шум, а не разные данные
+            boolean rbtFirst = r % 2 == 0; // порядок деревьев чередуется, чтобы ни одно не шло всегда первым
+            tasks.add(repetition(rbtFirst, false, w, true, r, repetitions, done, repetitions * 2));
+            tasks.add(repetition(!rbtFirst, false, w, true, r, repetitions, done, repetitions * 2));
+        }
+        List<RepResult> results = runAll(tasks);
+        TreeRun rbt = average(results, true, w, retainedPerNode(true, false, w)); // живая куча - после всех повторов, когда пул уже стоит
+        TreeRun avl = average(results, false, w, retainedPerNode(false, false, w));
+        return new ComparisonResult(rbt.time, avl.time, rbt.rotations, avl.rotations, rbt.height, avl.height,
+                rbt.latency, avl.latency, rbt.memory, avl.memory);
+    }
+
+    public static class TreeRun { // одно дерево на одном потоке операций - строка отчета BenchCli
+        public final double time; // мс, среднее по повторам
+        public final double rotations;
+        public final double height;
+        public final Latency latency; // пустые гистограммы, если задержки не замерялись
+        public final Memory memory;
+
+        public TreeRun(double time, double rotations, double height, Latency latency, Memory memory) {
+            this.time = time;
+            this.rotations = rotations;
+            this.height = height;
+            this.latency = latency;
+            this.memory = memory;
+        }
+    }
+
+    public TreeRun runWorkload(boolean rbt, Workload w, int repetitions, boolean latencies) { // одно дерево за раз - вдвое меньше памяти на больших N
+        return runWorkload(rbt, false, w, repetitions, latencies);
+    }
+
+    public TreeRun runWorkload(boolean rbt, boolean array, Workload w, int repetitions, boolean latencies) { // array - ArrayRedBlackTree/ArrayAVLTree
+        List<Supplier<RepResult>> tasks = new ArrayList<>();
+        AtomicInteger done = new AtomicInteger();
+        for (int r = 0; r < repetitions; r++) tasks.add(repetition(rbt, array, w, latencies, r, repetitions, done, repetitions));
+        List<RepResult> results = runAll(tasks);
+        return average(results, rbt, w, retainedPerNode(rbt, array, w));
+    }
+
+    private static final class RepResult { // один повтор одного дерева
+        final boolean rbt;
+        final long time; // нс
+        final int rotations;
+        final int height;
+        final Latency latency;
+        final long allocated; // байт за замеряемое окно, -1 - не замерялось
+        final long gcCount;
+        final long gcTime; // мс
+
+        RepResult(boolean rbt, long time, int rotations, int height, Latency latency,
+                  long allocated, long gcCount, long gcTime) {
+            this.rbt = rbt;
+            this.time = time;
+            this.rotations = rotations;
+            this.height = height;
+            this.latency = latency;
+            this.allocated = allocated;
+            this.gcCount = gcCount;
+            this.gcTime = gcTime;
+        }
+    }
+
+    private Supplier<RepResult> repetition(boolean rbt, boolean array, Workload w, boolean latencies,
+                                           int r, int repetitions, AtomicInteger done, int total) { // свои деревья на каждый повтор - повторы можно гонять параллельно
+        return () -> {
+            checkCancelled();
+            IntTree tree = newTree(rbt, array);
+            for (int k : w.initial) tree.insert(k);
+            tree.resetRotations(); // сбрасываем счетчики поворотов дабы считать только тестовые операции
+            long[] gc0 = gcTotals(); // в параллельном режиме сюда попадают и сборки из-за соседних повторов
+            long[] bytes = new long[1];
+            long time = runOps(tree, rbt, w, r, bytes); // выделения runOps считает сам, без образцов
+            long[] gc1 = gcTotals();
+            long allocated = THREADS == null ? -1 : bytes[0];
+            int rotations = tree.getRotations();
+            int height = tree.getHeight();
+            tree = null; // основное дерево больше не нужно - проход задержек строит свое
+
+            Latency latency = new Latency();
+            if (latencies) { // задержки - отдельным проходом: те же начальные ключи и операции на новом дереве
+                checkCancelled(); // проход задержек на больших N сопоставим по времени с основным
+                IntTree fresh = newTree(rbt, array);
+                for (int k : w.initial) fresh.insert(k);
+                recordLatencies(fresh, w.ops, w.keys, latency);
+            }
+            step(done.incrementAndGet(), total, String.format("Повтор %d/%d: %s%s= %.3f мс",
+                    r + 1, repetitions, array ? "Array" : "", rbt ? "RBT" : "AVL", time / 1e6));
+            return new RepResult(rbt, time, rotations, height, latency, allocated, gc1[0] - gc0[0], gc1[1] - gc0[1]);
+        };
+    }
+
+    private static TreeRun average(List<RepResult> results, boolean rbt, Workload w, double retainedPerNode) {
+        long time = 0, rotations = 0, height = 0, allocated = 0, gcCount = 0, gcTime = 0;
+        int n = 0;
+        Latency latency = new Latency();
+        for (RepResult r : results) {
+            if (r.rbt != rbt) continue;
+            time += r.time;
+            rotations += r.rotations;
+            height += r.height;
+            latency.add(r.latency);
+            allocated = allocated < 0 || r.allocated < 0 ? -1 : allocated + r.allocated;
+            gcCount += r.gcCount;
+            gcTime += r.gcTime;
+            n++;
+        }
+        Memory memory = new Memory(allocated < 0 ? Double.NaN : allocated / ((double) n * Math.max(1, w.size())),
+                gcCount / (double) n, gcTime / (double) n, retainedPerNode);
+        return new TreeRun(time / (double) n / 1_000_000.0, rotations / (double) n, height / (double) n, latency, memory); // в мс
+    }
+
+    // ---------- параллельный режим ----------
+
+    private <T> List<T> runAll(List<Supplier<T>> tasks) { // по очереди или на workers потоках; результаты в порядке задач
+        checkCancelled(); // отменили еще во время генерации ключей
+        List<T> results = new ArrayList<>(tasks.size());
+        int threads = Math.min(workers, tasks.size());
+        if (threads <= 1) {
+            for (Supplier<T> t : tasks) results.add(t.get());
+            return results;
+        }
+        timerOverhead(); // калибруем заранее, а не сразу в нескольких потоках
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "tree-compare-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (Supplier<T> t : tasks) futures.add(pool.submit(t::get));
+            for (Future<T> f : futures) results.add(f.get());
+            return results;
+        } catch (InterruptedException e) { // отменили вызывающий поток - прерываем и рабочие
+            pool.shutdownNow();
+            while (!pool.isTerminated()) { // ждем, пока рабочие дойдут до проверки отмены, - иначе следующий тест стартует поверх них
+                try {
+                    pool.awaitTermination(1, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
                 }
             }
-            long t1 = System.nanoTime();
-            totalRBTTime += (t1 - t0);
-            totalRBTRot += rtree.getRotations();
-            rbtHeight += rtree.getHeight();
-
-            // используем те же самые операции и ключи для AVL
-            long ta0 = System.nanoTime();
-            for (int i = 0; i < operations.size(); i++) {
-                int op = operations.get(i);
-                int key = operationKeys.get(i);
-                switch (op) {
-                    case 0: atree.insert(key); break;
-                    case 1: atree.delete(key); break;
-                    case 2: atree.contains(key); break;
+            Thread.currentThread().interrupt();
+            throw new CancellationException("тест отменен");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause; // OutOfMemoryError и т.п. - как в последовательном режиме
+            throw new IllegalStateException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // с каналом образцов цикл идет кусками по SAMPLE_EVERY операций: внутри куска ни одной лишней проверки,
+    // а время на снятие образца между кусками вычитается из замера
+    // один цикл на все четыре дерева: вызов через IntTree все они оплачивают одинаково, цифры без него - модуль benchmarks (JMH)
+    private long runOps(IntTree tree, boolean rbt, Workload w, int rep, long[] allocated) {
+        int[] ops = w.ops, keys = w.keys;
+        SampleChannel ch = samples;
+        int chunk = ch == null ? Math.max(1, ops.length) : SAMPLE_EVERY;
+        long[] gc = ch == null ? null : gcTotals();
+        int rotations = tree.getRotations();
+        long hits = 0, paused = 0, sampled = 0;
+        long a0 = allocatedBytes(); // счетчики снимаются вне nanoTime-окна
+        long t0 = System.nanoTime(), last = t0;
+        for (int from = 0; from < ops.length; from += chunk) {
+            int to = Math.min(ops.length, from + chunk);
+            for (int i = from; i < to; i++) {
+                switch (ops[i]) {
+                    case Workload.INSERT: tree.insert(keys[i]); break;
+                    case Workload.DELETE: tree.delete(keys[i]); break;
+                    default: if (tree.contains(keys[i])) hits++; break;
                 }
             }
-            long ta1 = System.nanoTime();
-            totalAVLTime += (ta1 - ta0);
-            totalAVLRot += atree.getRotations();
-            avlHeight += atree.getHeight();
+            if (ch != null) {
+                long now = System.nanoTime();
+                long s0 = allocatedBytes();
+                // getHeight у всех IntTree - чтение из корня: обход на каждый образец вытеснил бы дерево из кэша и TLB,
+                // и вычитание паузы этого бы не вернуло
+                publish(ch, rbt, rep, to, to - from, now - last, tree.getRotations() - rotations, tree.getHeight(), gc);
+                rotations = tree.getRotations();
+                sampled += allocatedBytes() - s0;
+                last = System.nanoTime();
+                paused += last - now;
+            }
         }
+        long t1 = System.nanoTime();
+        allocated[0] = allocatedBytes() - a0 - sampled; // Sample, gcTotals и список MXBean-ов - не выделения дерева
+        sink.add(hits); // один раз за прогон - в горячем цикле только локальный счетчик
+        return t1 - t0 - paused;
+    }
 
-        return new ComparisonResult( // создаем и возвращаем новый обьект с результатами теста
-                totalRBTTime / repetitions / 1_000_000.0,
-                totalAVLTime / repetitions / 1_000_000.0,
-                totalRBTRot / (double) repetitions,
-                totalAVLRot / (double) repetitions,
-                rbtHeight / (double) repetitions,
-                avlHeight / (double) repetitions
-        );
+    private static void publish(SampleChannel ch, boolean rbt, int rep, int ops, int intervalOps, long intervalNs,
+                                int rotations, int height, long[] gc) { // gc - итоги прошлого образца, обновляются на месте
+        long[] now = gcTotals();
+        ch.offer(new Sample(rbt, rep, ops, intervalOps, intervalNs, rotations, height, now[0] - gc[0], now[1] - gc[1]));
+        gc[0] = now[0];
+        gc[1] = now[1];
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,405 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+public class TreeExport { // картинка дерева без JavaFX: SVG или PNG пишутся в файл по ходу обхода, дерево целиком не копируется
+    // java -cp app/target/classes TreeExport --in big.tree --tree avl --out big.svg
+
+    private static final String USAGE = String.join("\n",
+            "Использование: TreeExport (--in FILE | --n N) --out FILE.svg|FILE.png [опции]",
+            "  --in FILE              дерево из файла TreeFile (save в UI или SearchTree.save)",
+            "  --n N                  или N случайных ключей, как кнопка \"Добавить N случайных\"",
+            "  --seed S               seed для --n, по умолчанию 42",
+            "  --tree rbt|avl         какое дерево строить, по умолчанию rbt",
+            "  --column PX            ширина колонки узла, по умолчанию 40 (SVG) и по --width (PNG)",
+            "  --width PX             наибольшая ширина PNG, по умолчанию 16384");
+
+    static final int MAX_PNG_WIDTH = 1 << 16;
+    private static final double SVG_COLUMN = 40; // кружок и зазор - как на холсте при сильном приближении
+    private static final int BAND = (int) TreeCanvas.LEVEL_HEIGHT; // строк PNG в одной полосе
+
+    // те же корзины цветов, что и у TreeCanvas: у КЧД - красный/черный, у AVL - |bf| = 0, 1, больше
+    private static final String[] RBT_FILL = {"#ff0000", "#000000"};
+    private static final String[] AVL_FILL = {"#00008b", "#006400", "#8b0000"};
+    private static final String[] AVL_BF = {"#90ee90", "#ffff00", "#ff4500"};
+
+    interface Visitor { // leftRank - номер левого потомка, parentRank - номер родителя у правого потомка; иначе -1
+        void node(int rank, int depth, int key, int decoration, int leftRank, int parentRank) throws IOException;
+    }
+
+    // ---------- правила раскладки (их же использует TreeCanvas) ----------
+
+    static double x(int rank, double colWidth) { // x - inorder номер узла, +0.5 - середина колонки
+        return (rank + 0.5) * colWidth;
+    }
+
+    static double y(int depth) {
+        return TreeCanvas.TOP + depth * TreeCanvas.LEVEL_HEIGHT;
+    }
+
+    static double nodeRadius(double colWidth) { // узлы сжимаются вместе с колонками, но не меньше точки
+        return Math.max(2, Math.min(TreeCanvas.NODE_RADIUS, colWidth * 0.45));
+    }
+
+    static int bucket(boolean rbt, int decoration) {
+        return rbt ? (decoration == 1 ? 0 : 1) : Math.min(2, Math.abs(decoration));
+    }
+
+    static boolean showKeys(boolean rbt, double rad) { // у AVL ключ и bf - только в полном размере
+        return rad >= (rbt ? TreeCanvas.NODE_RADIUS * 0.6 : TreeCanvas.NODE_RADIUS);
+    }
+
+    private static double width(TreeView<?> tree, double colWidth) {
+        return colWidth * (tree.getNodeCount() + 1);
+    }
+
+    private static double height(TreeView<?> tree) {
+        return y(Math.max(0, tree.getHeight() - 1)) + TreeCanvas.TOP; // снизу тот же отступ, что и сверху
+    }
+
+    // ---------- обход ----------
+
+    static <N> void walk(TreeView<N> tree, Visitor v) throws IOException {
+        walk(tree, Integer.MAX_VALUE, v);
+    }
+
+    // inorder с номерами; память - стек в высоту дерева. Глубже maxDepth не спускается: пропущенное поддерево
+    // только сдвигает номера на subtreeSize - поэтому maxDepth имеет смысл лишь у дерева с размерами
+    @SuppressWarnings("unchecked")
+    static <N> void walk(TreeView<N> tree, int maxDepth, Visitor v) throws IOException {
+        Object[] nodes = new Object[64];
+        int[] depth = new int[64], leftRank = new int[64], parentRank = new int[64];
+        int sp = 0, rank = 0, d = 0, pr = -1;
+        N node = tree.root();
+        while (node != null || sp > 0) {
+            for (; node != null; d++) { // спуск по левому краю
+                if (sp == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, sp * 2);
+                    depth = Arrays.copyOf(depth, sp * 2);
+                    leftRank = Arrays.copyOf(leftRank, sp * 2);
+                    parentRank = Arrays.copyOf(parentRank, sp * 2);
+                }
+                nodes[sp] = node;
+                depth[sp] = d;
+                leftRank[sp] = -1;
+                parentRank[sp++] = pr;
+                pr = -2; // дальше по краю - левые потомки
+                node = tree.left(node);
+                if (d == maxDepth && node != null) {
+                    rank += tree.subtreeSize(node);
+                    node = null;
+                }
+            }
+            node = (N) nodes[--sp];
+            nodes[sp] = null;
+            int p = parentRank[sp];
+            v.node(rank, depth[sp], tree.key(node), tree.decoration(node), leftRank[sp], Math.max(-1, p));
+            if (p == -2) leftRank[sp - 1] = rank; // ребро к левому потомку рисует родитель - ему нужен номер
+            d = depth[sp] + 1;
+            pr = rank++;
+            node = tree.right(node);
+            if (depth[sp] == maxDepth && node != null) {
+                rank += tree.subtreeSize(node);
+                node = null;
+            }
+        }
+    }
+
+    // ---------- SVG ----------
+
+    public static <N> void svg(TreeView<N> tree, boolean rbt, double colWidth, Path file) throws IOException { // два прохода: сначала все ребра, потом узлы поверх
+        double rad = nodeRadius(colWidth);
+        boolean keys = showKeys(rbt, rad);
+        String[] fill = rbt ? RBT_FILL : AVL_FILL;
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            String w = num(width(tree, colWidth)), h = num(height(tree));
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + w + "\" height=\"" + h
+                    + "\" viewBox=\"0 0 " + w + " " + h + "\">\n<style>\n");
+            for (int b = 0; b < fill.length; b++) out.write(".b" + b + "{fill:" + fill[b] + "}\n");
+            out.write("text{font-family:sans-serif;text-anchor:middle;dominant-baseline:central}\n");
+            out.write(".k{fill:#ffffff;font-size:12px}\n");
+            for (int b = 0; b < AVL_BF.length && !rbt; b++) out.write(".f" + b + "{fill:" + AVL_BF[b] + ";font-size:10px}\n");
+            out.write("</style>\n<rect width=\"100%\" height=\"100%\" fill=\"#ffffff\"/>\n<g stroke=\"#808080\">\n");
+
+            walk(tree, (rank, depth, key, decoration, leftRank, parentRank) -> {
+                double x = x(rank, colWidth), y = y(depth);
+                if (leftRank >= 0) line(out, x, y, x(leftRank, colWidth), y(depth + 1));
+                if (parentRank >= 0) line(out, x(parentRank, colWidth), y(depth - 1), x, y);
+            });
+            out.write("</g>\n");
+
+            String r = num(rad);
+            walk(tree, (rank, depth, key, decoration, leftRank, parentRank) -> {
+                String x = num(x(rank, colWidth));
+                double y = y(depth);
+                int b = bucket(rbt, decoration);
+                out.write("<circle cx=\"" + x + "\" cy=\"" + num(y) + "\" r=\"" + r + "\" class=\"b" + b + "\"/>\n");
+                if (!keys) return;
+                out.write("<text x=\"" + x + "\" y=\"" + num(rbt ? y : y - 5) + "\" class=\"k\">" + key + "</text>\n");
+                if (!rbt) out.write("<text x=\"" + x + "\" y=\"" + num(y + 10) + "\" class=\"f" + b + "\">bf=" + decoration + "</text>\n");
+            });
+            out.write("</svg>\n");
+        }
+    }
+
+    private static void line(Writer out, double x1, double y1, double x2, double y2) throws IOException {
+        out.write("<line x1=\"" + num(x1) + "\" y1=\"" + num(y1) + "\" x2=\"" + num(x2) + "\" y2=\"" + num(y2) + "\"/>\n");
+    }
+
+    private static String num(double v) { // без String.format: на миллионах узлов он заметен
+        long r = Math.round(v * 10);
+        return r % 10 == 0 ? String.valueOf(r / 10) : (r / 10) + "." + Math.abs(r % 10);
+    }
+
+    // ---------- PNG ----------
+
+    // полосами по BAND строк, на каждую полосу два обхода (ребра, узлы); в памяти - полоса width x BAND и стеки в высоту.
+    // Если дерево хранит размеры поддеревьев, обход не идет ниже полосы - в сумме O(n), а не O(n * высота)
+    public static <N> void png(TreeView<N> tree, boolean rbt, double colWidth, Path file) throws IOException {
+        int w = (int) Math.ceil(width(tree, colWidth)), h = (int) Math.ceil(height(tree));
+        if (w > MAX_PNG_WIDTH) throw new IllegalArgumentException("PNG шириной " + w + " px - уменьшите колонку");
+        double rad = nodeRadius(colWidth);
+        boolean keys = showKeys(rbt, rad);
+        Color[] fill = colors(rbt ? RBT_FILL : AVL_FILL), bfFill = colors(AVL_BF);
+        Font keyFont = new Font(Font.SANS_SERIF, Font.PLAIN, 12), bfFont = new Font(Font.SANS_SERIF, Font.PLAIN, 10);
+        BufferedImage band = new BufferedImage(w, BAND, BufferedImage.TYPE_INT_RGB);
+        Line2D.Double edge = new Line2D.Double();
+        Ellipse2D.Double circle = new Ellipse2D.Double();
+
+        boolean sized = tree.root() != null && tree.subtreeSize(tree.root()) >= 0; // без размеров - полный обход на полосу
+
+        try (PngWriter out = new PngWriter(file, w, h)) {
+            for (int top = 0; top < h; top += BAND) {
+                int bandTop = top, rows = Math.min(BAND, h - top);
+                int maxDepth = !sized ? Integer.MAX_VALUE // первый уровень, целиком лежащий ниже полосы
+                        : (int) Math.max(0, Math.floor((bandTop + rows + rad - TreeCanvas.TOP) / TreeCanvas.LEVEL_HEIGHT) + 1);
+                Graphics2D g = band.createGraphics();
+                try {
+                    g.setColor(Color.WHITE);
+                    g.fillRect(0, 0, w, BAND);
+                    g.translate(0, -bandTop);
+                    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                    g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                    g.setColor(Color.GRAY);
+                    g.setStroke(new BasicStroke(1));
+                    walk(tree, maxDepth, (rank, depth, key, decoration, leftRank, parentRank) -> { // ребро от родителя d-1 к узлу d
+                        if (parentRank < 0 && leftRank < 0) return;
+                        double x = x(rank, colWidth), y = y(depth);
+                        if (leftRank >= 0 && y < bandTop + rows && y(depth + 1) > bandTop) {
+                            edge.setLine(x, y, x(leftRank, colWidth), y(depth + 1));
+                            g.draw(edge);
+                        }
+                        if (parentRank >= 0 && y(depth - 1) < bandTop + rows && y > bandTop) {
+                            edge.setLine(x(parentRank, colWidth), y(depth - 1), x, y);
+                            g.draw(edge);
+                        }
+                    });
+                    FontMetrics keyMetrics = g.getFontMetrics(keyFont), bfMetrics = g.getFontMetrics(bfFont);
+                    walk(tree, maxDepth, (rank, depth, key, decoration, leftRank, parentRank) -> {
+                        double y = y(depth);
+                        if (y + rad < bandTop || y - rad > bandTop + rows) return; // узел не задевает полосу
+                        double x = x(rank, colWidth);
+                        int b = bucket(rbt, decoration);
+                        g.setColor(fill[b]);
+                        circle.setFrame(x - rad, y - rad, rad * 2, rad * 2);
+                        g.fill(circle);
+                        if (!keys) return;
+                        g.setColor(Color.WHITE);
+                        g.setFont(keyFont);
+                        text(g, keyMetrics, String.valueOf(key), x, rbt ? y : y - 5);
+                        if (rbt) return;
+                        g.setColor(bfFill[b]);
+                        g.setFont(bfFont);
+                        text(g, bfMetrics, "bf=" + decoration, x, y + 10);
+                    });
+                } finally {
+                    g.dispose();
+                }
+                out.rows(band, rows);
+            }
+        }
+    }
+
+    private static void text(Graphics2D g, FontMetrics m, String s, double x, double y) { // по центру, как TextAlignment.CENTER + VPos.CENTER
+        g.drawString(s, (float) (x - m.stringWidth(s) / 2.0), (float) (y + (m.getAscent() - m.getDescent()) / 2.0));
+    }
+
+    private static Color[] colors(String[] hex) {
+        Color[] c = new Color[hex.length];
+        for (int i = 0; i < hex.length; i++) c[i] = Color.decode(hex[i]);
+        return c;
+    }
+
+    private static final class PngWriter implements Closeable { // PNG построчно: сжатые данные уходят в файл кусками IDAT, картинка целиком не нужна
+        private final DataOutputStream file;
+        private final DeflaterOutputStream idat;
+        private final byte[] row; // байт фильтра (0) + RGB
+        private final int[] pixels;
+        private final CRC32 crc = new CRC32();
+
+        PngWriter(Path path, int width, int height) throws IOException {
+            file = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+            file.write(new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+            ByteBuffer ihdr = ByteBuffer.allocate(13).putInt(width).putInt(height)
+                    .put((byte) 8).put((byte) 2).put((byte) 0).put((byte) 0).put((byte) 0); // 8 бит, RGB, без чересстрочности
+            chunk("IHDR", ihdr.array(), 13);
+            idat = new DeflaterOutputStream(new OutputStream() {
+                private final byte[] buf = new byte[1 << 16];
+                private int len = 0;
+
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] {(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int n) throws IOException {
+                    while (n > 0) {
+                        int k = Math.min(n, buf.length - len);
+                        System.arraycopy(b, off, buf, len, k);
+                        len += k;
+                        off += k;
+                        n -= k;
+                        if (len == buf.length) flushChunk();
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flushChunk();
+                }
+
+                private void flushChunk() throws IOException {
+                    if (len == 0) return;
+                    chunk("IDAT", buf, len);
+                    len = 0;
+                }
+            }, new Deflater(6), 1 << 16);
+            row = new byte[1 + width * 3];
+            pixels = new int[width];
+        }
+
+        void rows(BufferedImage band, int count) throws IOException {
+            int width = pixels.length;
+            for (int r = 0; r < count; r++) {
+                band.getRGB(0, r, width, 1, pixels, 0, width);
+                for (int i = 0, j = 1; i < width; i++) {
+                    int p = pixels[i];
+                    row[j++] = (byte) (p >> 16);
+                    row[j++] = (byte) (p >> 8);
+                    row[j++] = (byte) p;
+                }
+                idat.write(row);
+            }
+        }
+
+        private void chunk(String type, byte[] data, int len) throws IOException {
+            byte[] t = type.getBytes(StandardCharsets.US_ASCII);
+            crc.reset();
+            crc.update(t);
+            crc.update(data, 0, len);
+            file.writeInt(len);
+            file.write(t);
+            file.write(data, 0, len);
+            file.writeInt((int) crc.getValue());
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                idat.close(); // досжимает хвост и отдает последний IDAT
+                chunk("IEND", new byte[0], 0);
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    // ---------- командная строка ----------
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        Path in = null, out = null;
+        int n = -1, maxWidth = 16384;
+        long seed = 42;
+        boolean rbt = true;
+        double column = Double.NaN;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String a = args[i];
+                switch (a) {
+                    case "-h":
+                    case "--help": System.out.println(USAGE); return;
+                    case "--in": in = Paths.get(CliArgs.value(args, ++i, a)); break;
+                    case "--out": out = Paths.get(CliArgs.value(args, ++i, a)); break;
+                    case "--n": n = (int) CliArgs.number(CliArgs.value(args, ++i, a), a); break;
+                    case "--seed": seed = (long) CliArgs.number(CliArgs.value(args, ++i, a), a); break;
+                    case "--column": column = CliArgs.number(CliArgs.value(args, ++i, a), a); break;
+                    case "--width": maxWidth = (int) CliArgs.number(CliArgs.value(args, ++i, a), a); break;
+                    case "--tree": {
+                        String t = CliArgs.value(args, ++i, a);
+                        if (!t.equals("rbt") && !t.equals("avl")) throw new IllegalArgumentException("--tree: rbt или avl, а не " + t);
+                        rbt = t.equals("rbt");
+                        break;
+                    }
+                    default: throw new IllegalArgumentException("неизвестная опция: " + a);
+                }
+            }
+            if (out == null || (in == null) == (n < 0)) throw new IllegalArgumentException("нужны --out и одно из --in / --n");
+            if (column <= 0 || maxWidth < 1 || maxWidth > MAX_PNG_WIDTH) {
+                throw new IllegalArgumentException("--column должна быть > 0, --width - от 1 до " + MAX_PNG_WIDTH);
+            }
+        } catch (IllegalArgumentException e) {
+            CliArgs.exitUsage(e, USAGE);
+            return;
+        }
+
+        try {
+            boolean png = out.getFileName().toString().toLowerCase().endsWith(".png");
+            SearchTree tree = rbt ? new RedBlackTree(png) : new AVLTree(png); // PNG нужны размеры поддеревьев - см. png()
+            if (in != null) {
+                tree.load(in);
+            } else {
+                Random rnd = new Random(seed);
+                int[] keys = new int[n];
+                for (int i = 0; i < n; i++) keys[i] = rnd.nextInt(Math.max(1000, n * 10));
+                tree.insertAll(keys);
+            }
+            TreeView<?> view = (TreeView<?>) tree;
+            long start = System.nanoTime();
+            if (png) {
+                double col = Double.isNaN(column) ? Math.min(SVG_COLUMN, maxWidth / (double) (tree.getNodeCount() + 1)) : column;
+                png(view, rbt, col, out);
+            } else {
+                svg(view, rbt, Double.isNaN(column) ? SVG_COLUMN : column, out);
+            }
+            System.err.printf("%s: %d узлов, высота %d, %.1f с%n", out, tree.getNodeCount(), tree.getHeight(),
+                    (System.nanoTime() - start) / 1e9);
+        } catch (IOException | IllegalArgumentException e) {
+            CliArgs.exitError(e);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+final class TreeFile { // бинарный снимок дерева: заголовок, ключи по возрастанию, затем байт формы на узел в прямом обходе
+
+    // все числа little endian
+    // [0..16)            magic, version, type, count
+    // [16..16+4*count)   ключи по порядку - по ним MappedTree ищет двоичным поиском
+    // [..+count)         форма: бит 0 - есть левый потомок, бит 1 - есть правый; у КЧД бит 2 - красный, у AVL биты 2..7 - высота
+    static final int MAGIC = 0x45455254; // "TREE"
+    static final int VERSION = 1;
+    static final int TYPE_AVL = 0;
+    static final int TYPE_RBT = 1;
+    static final int HEADER = 16;
+
+    static final int HAS_LEFT = 1;
+    static final int HAS_RIGHT = 2;
+    static final int RED = 4;
+    static final int HEIGHT_SHIFT = 2;
+    static final int MAX_DEPTH = 96; // глубже не бывает ни у AVL, ни у КЧД с int-счетчиком - защита от битой формы
+
+    static final int CHUNK = 1 << 30; // окно отображения: MappedByteBuffer не больше 2 ГБ, кратно 4 - int не режется
+
+    private TreeFile() {}
+
+    static long shapeOffset(int count) {return HEADER + 4L * count;}
+    static long fileSize(int count) {return HEADER + 5L * count;}
+
+    static IOException corrupted(Path file) {
+        return new IOException("файл дерева поврежден: " + file);
+    }
+
+    static final class Writer implements AutoCloseable { // потоковая запись через FileChannel во временный файл + атомарная замена
+        private final Path file, tmp;
+        private final FileChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private boolean committed;
+
+        Writer(Path file, int type, int count) throws IOException {
+            this.file = file;
+            this.tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            this.ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            buf.putInt(MAGIC).putInt(VERSION).putInt(type).putInt(count);
+        }
+
+        void key(int k) throws IOException {
+            if (buf.remaining() < 4) flush();
+            buf.putInt(k);
+        }
+
+        void shape(int b) throws IOException {
+            if (!buf.hasRemaining()) flush();
+            buf.put((byte) b);
+        }
+
+        private void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) ch.write(buf);
+            buf.clear();
+        }
+
+        void commit() throws IOException { // до commit старый файл не трогается - сбой посреди записи его не портит
+            flush();
+            ch.force(false);
+            ch.close();
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (committed) return;
+            ch.close();
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    static final class Reader implements AutoCloseable { // последовательное чтение ключей и формы из отображенного файла
+        final Path file;
+        final int type, count;
+        private final FileChannel ch;
+        private final Cursor keys, shape;
+        private int keysRead, shapeRead;
+        private int lastKey;
+
+        Reader(Path file) throws IOException {
+            this.file = file;
+            this.ch = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                ByteBuffer h = ch.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(HEADER, ch.size()))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                if (h.remaining() < HEADER || h.getInt() != MAGIC) throw new IOException("не файл дерева: " + file);
+                if (h.getInt() != VERSION) throw new IOException("неизвестная версия файла дерева: " + file);
+                type = h.getInt();
+                count = h.getInt();
+                if (count < 0 || ch.size() != fileSize(count) || (type != TYPE_AVL && type != TYPE_RBT)) throw corrupted(file);
+                keys = new Cursor(ch, HEADER, 4L * count);
+                shape = new Cursor(ch, shapeOffset(count), count);
+            } catch (IOException | RuntimeException e) {
+                ch.close();
+                throw e;
+            }
+        }
+
+        int nextKey() throws IOException {
+            if (keysRead++ == count) throw corrupted(file); // форма ссылается на лишние узлы
+            int k = keys.next().getInt();
+            if (keysRead > 1 && k < lastKey) throw corrupted(file); // ключи обязаны идти по возрастанию
+            lastKey = k;
+            return k;
+        }
+
+        int nextShape(int depth) throws IOException {
+            if (shapeRead++ == count || depth > MAX_DEPTH) throw corrupted(file);
+            return shape.next().get() & 0xFF;
+        }
+
+        void finish() throws IOException { // форма должна описать ровно count узлов
+            if (keysRead != count || shapeRead != count) throw corrupted(file);
+        }
+
+        int[] readKeys() throws IOException { // только ключи - когда форма не подходит дереву (файл другого типа)
+            int[] all = new int[count];
+            for (int i = 0; i < count; i++) all[i] = nextKey();
+            shapeRead = count;
+            return all;
+        }
+
+        @Override
+        public void close() throws IOException {
+            ch.close();
+        }
+    }
+
+    private static final class Cursor { // окно отображения, которое сдвигается по мере чтения
+        private final FileChannel ch;
+        private long pos;
+        private final long end;
+        private MappedByteBuffer buf;
+
+        Cursor(FileChannel ch, long pos, long length) {
+            this.ch = ch;
+            this.pos = pos;
+            this.end = pos + length;
+        }
+
+        ByteBuffer next() throws IOException {
+            if (buf == null || !buf.hasRemaining()) {
+                long len = Math.min(CHUNK, end - pos);
+                buf = ch.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                buf.order(ByteOrder.LITTLE_ENDIAN);
+                pos += len;
+            }
+            return buf;
+        }
+    }
+
+    static MappedByteBuffer[] mapKeys(FileChannel ch, int count) throws IOException { // ключи окнами по CHUNK байт для MappedTree
+        long bytes = 4L * count;
+        MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((bytes + CHUNK - 1) / CHUNK)];
+        for (int i = 0; i < chunks.length; i++) {
+            long from = (long) i * CHUNK;
+            chunks[i] = ch.map(FileChannel.MapMode.READ_ONLY, HEADER + from, Math.min(CHUNK, bytes - from));
+            chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,265 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class TreeJournal implements AutoCloseable { // журнал изменений перед деревом: снимок TreeFile + лог операций после него
+
+    public enum Mode {
+        OFF, // журнала нет - для сравнения
+        ASYNC, // каждая операция сразу уходит в файл (write), fsync не делается - переживает падение процесса, но не ОС
+        GROUP // тоже write на каждую операцию + fsync раз на groupSize записей или не позже чем через groupMillis - групповая фиксация
+    }
+
+    private static final byte OP_INSERT = 1;
+    private static final byte OP_DELETE = 2;
+    private static final int RECORD = 5; // байт операции + ключ
+    private static final int REPLAY_BATCH = 1 << 16; // сколько подряд идущих одинаковых операций применяется одной партией
+
+    // файлы поколения g: snapshot-g.tree - дерево, journal-g.log - операции после него.
+    // новый снимок пишется как поколение g+1 и только потом удаляются файлы g - сбой на любом шаге не применяет операции дважды
+    private static final String SNAPSHOT = "snapshot-";
+    private static final String JOURNAL = "journal-";
+
+    private final SearchTree tree;
+    private final Path dir;
+    private final Mode mode;
+    private final int groupSize;
+    private final long groupNanos;
+    private final long snapshotEvery; // операций между снимками, 0 - только вручную
+
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private FileChannel log;
+    private long generation;
+    private int pending; // записей после последней фиксации
+    private long lastCommit = System.nanoTime();
+    private long sinceSnapshot;
+    private long replayed; // операций, восстановленных из лога при открытии
+    private ScheduledExecutorService flusher; // GROUP: фиксирует группу по таймеру, даже если новых записей больше нет
+    private IOException flushFailed; // ошибка фонового fsync - бросается следующей операции
+
+    public TreeJournal(SearchTree tree, Path dir, Mode mode) throws IOException {
+        this(tree, dir, mode, 1024, 10, 1_000_000);
+    }
+
+    public TreeJournal(SearchTree tree, Path dir, Mode mode, int groupSize, long groupMillis, long snapshotEvery) throws IOException {
+        if (groupSize < 1) throw new IllegalArgumentException("groupSize должен быть >= 1: " + groupSize);
+        this.tree = tree;
+        this.dir = dir;
+        this.mode = mode;
+        this.groupSize = groupSize;
+        this.groupNanos = groupMillis * 1_000_000;
+        this.snapshotEvery = snapshotEvery;
+        if (mode != Mode.OFF) recover();
+        if (mode == Mode.GROUP) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "tree-journal-flush");
+                t.setDaemon(true); // незакрытый журнал не держит JVM
+                return t;
+            });
+            long period = Math.max(1_000_000, groupNanos / 2); // окно истекает между тиками - опоздание не больше половины окна
+            flusher.scheduleAtFixedRate(this::flushExpired, period, period, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public SearchTree getTree() {return tree;} // читать можно напрямую, менять - только через журнал
+    public Mode getMode() {return mode;}
+    public long getReplayedCount() {return replayed;}
+
+    // ---------- восстановление ----------
+
+    private void recover() throws IOException { // последний полный снимок + хвост его лога
+        Files.createDirectories(dir);
+        generation = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, SNAPSHOT + "*.tree")) {
+            for (Path f : files) generation = Math.max(generation, generationOf(f, SNAPSHOT, ".tree"));
+        }
+        if (generation >= 0) tree.load(snapshotFile(generation));
+        else generation = 0; // снимка еще не было - только лог поколения 0 поверх пустого дерева
+
+        Path journal = journalFile(generation);
+        long valid = Files.exists(journal) ? replay(journal) : 0;
+        log = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        log.truncate(valid); // оборванная запись в конце отбрасывается, новые пишутся после последней целой
+        log.position(valid);
+        deleteOlder(generation);
+    }
+
+    private long replay(Path journal) throws IOException { // возвращает длину целой части лога
+        try (FileChannel ch = FileChannel.open(journal, StandardOpenOption.READ)) {
+            long records = ch.size() / RECORD; // хвост короче записи - сбой посреди записи
+            int[] run = new int[REPLAY_BATCH];
+            int n = 0;
+            byte runOp = 0;
+            long done = 0;
+            long chunk = (Integer.MAX_VALUE / RECORD) * (long) RECORD;
+            for (long pos = 0; done < records; pos += chunk) {
+                MappedByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(chunk, records * RECORD - pos));
+                in.order(ByteOrder.LITTLE_ENDIAN);
+                while (in.hasRemaining()) {
+                    byte op = in.get();
+                    int key = in.getInt();
+                    if (op != OP_INSERT && op != OP_DELETE) { // недописанный блок (нули после сбоя) - дальше не читаем
+                        applyRun(runOp, run, n);
+                        replayed = done;
+                        return done * RECORD;
+                    }
+                    if (op != runOp || n == run.length) {
+                        applyRun(runOp, run, n);
+                        runOp = op;
+                        n = 0;
+                    }
+                    run[n++] = key;
+                    done++;
+                }
+            }
+            applyRun(runOp, run, n);
+            replayed = done;
+            return done * RECORD;
+        }
+    }
+
+    private void applyRun(byte op, int[] run, int n) { // порядок внутри серии одинаковых операций не важен - применяем партиями
+        if (n == 0) return;
+        int[] keys = Arrays.copyOf(run, n);
+        Arrays.sort(keys);
+        while (n > 0) { // insertAll/deleteAll берут каждый ключ один раз - повторы уходят в следующий круг
+            int[] distinct = new int[n];
+            int d = 0, rest = 0;
+            for (int i = 0; i < n; i++) {
+                if (i > 0 && keys[i] == keys[i - 1]) keys[rest++] = keys[i]; // rest <= i - не затираем непрочитанное
+                else distinct[d++] = keys[i];
+            }
+            if (op == OP_INSERT) tree.insertAll(Arrays.copyOf(distinct, d));
+            else tree.deleteAll(Arrays.copyOf(distinct, d));
+            n = rest;
+        }
+    }
+
+    // ---------- запись ----------
+
+    public synchronized void insert(int key) throws IOException {
+        append(OP_INSERT, key); // сначала журнал, потом дерево
+        tree.insert(key);
+        afterWrite(1);
+    }
+
+    public synchronized void delete(int key) throws IOException {
+        append(OP_DELETE, key);
+        tree.delete(key);
+        afterWrite(1);
+    }
+
+    public synchronized void insertAll(int[] keys) throws IOException { // пишем то, что реально вставит insertAll, - по разу каждый ключ
+        int[] batch = AVLTree.sortedDistinct(keys);
+        for (int k : batch) append(OP_INSERT, k);
+        tree.insertAll(batch);
+        afterWrite(batch.length);
+    }
+
+    public synchronized void deleteAll(int[] keys) throws IOException {
+        int[] batch = AVLTree.sortedDistinct(keys);
+        for (int k : batch) append(OP_DELETE, k);
+        tree.deleteAll(batch);
+        afterWrite(batch.length);
+    }
+
+    private void append(byte op, int key) throws IOException {
+        if (mode == Mode.OFF) return;
+        if (flushFailed != null) throw flushFailed;
+        if (buf.remaining() < RECORD) writeBuffer();
+        buf.put(op).putInt(key);
+        pending++;
+    }
+
+    private void afterWrite(int ops) throws IOException {
+        if (mode == Mode.OFF) return;
+        writeBuffer(); // одна запись в канал на операцию (insertAll - на всю партию): после падения процесса теряется только она сама
+        if (mode == Mode.GROUP && (pending >= groupSize || System.nanoTime() - lastCommit >= groupNanos)) sync();
+        sinceSnapshot += ops;
+        if (snapshotEvery > 0 && sinceSnapshot >= snapshotEvery) snapshot();
+    }
+
+    private synchronized void flushExpired() { // поток flusher; synchronized - не пересекается с записью и снимком
+        if (pending == 0 || flushFailed != null || !log.isOpen()) return;
+        if (System.nanoTime() - lastCommit < groupNanos) return;
+        try {
+            sync();
+        } catch (IOException e) {
+            flushFailed = e;
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) log.write(buf);
+        buf.clear();
+    }
+
+    public synchronized void sync() throws IOException { // все принятые операции на диске
+        if (mode == Mode.OFF) return;
+        writeBuffer();
+        if (pending > 0) log.force(false);
+        pending = 0;
+        lastCommit = System.nanoTime();
+    }
+
+    public synchronized void snapshot() throws IOException { // полный снимок дерева; лог начинается заново
+        if (mode == Mode.OFF) return;
+        sync();
+        long next = generation + 1;
+        tree.save(snapshotFile(next)); // атомарно: после этого поколение next полное и без лога
+        FileChannel fresh = FileChannel.open(journalFile(next), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        log.close();
+        log = fresh;
+        generation = next;
+        sinceSnapshot = 0;
+        deleteOlder(next);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (mode == Mode.OFF) return;
+        if (flusher != null) flusher.shutdown(); // тик, уже ждущий монитор, увидит закрытый канал и выйдет
+        try {
+            sync();
+        } finally {
+            log.close();
+        }
+    }
+
+    // ---------- файлы ----------
+
+    private Path snapshotFile(long g) {return dir.resolve(SNAPSHOT + g + ".tree");}
+    private Path journalFile(long g) {return dir.resolve(JOURNAL + g + ".log");}
+
+    private static long generationOf(Path f, String prefix, String suffix) {
+        String name = f.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return -1; // чужой файл - не наше поколение
+        }
+    }
+
+    private void deleteOlder(long g) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                long fg = name.startsWith(SNAPSHOT) && name.endsWith(".tree") ? generationOf(f, SNAPSHOT, ".tree")
+                        : name.startsWith(JOURNAL) && name.endsWith(".log") ? generationOf(f, JOURNAL, ".log") : -1;
+                if (fg >= 0 && fg < g) Files.delete(f);
+            }
+        }
+    }
+}
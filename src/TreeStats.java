@@ -0,0 +1,23 @@
+public class TreeStats { // снимок структурной статистики дерева, собирается за O(1)/O(log n) без обхода всех узлов
+    public final int height;
+    public final int blackHeight; // черная высота корня (для AVL всегда 0)
+    public final int nodeCount;
+    public final int rotations; // все повороты = singleRotations + 2 * doubleRotations
+    public final int singleRotations; // балансировки одним поворотом
+    public final int doubleRotations; // балансировки двойным поворотом (LR/RL или случаи 1C+1D в КЧД)
+    public final int insertRotations; // повороты при вставке (insertFixup / подъем после вставки в AVL)
+    public final int deleteRotations; // повороты при удалении (deleteFixup / подъем после удаления в AVL)
+
+    public TreeStats(int height, int blackHeight, int nodeCount,
+                     int singleRotations, int doubleRotations,
+                     int insertRotations, int deleteRotations) {
+        this.height = height;
+        this.blackHeight = blackHeight;
+        this.nodeCount = nodeCount;
+        this.singleRotations = singleRotations;
+        this.doubleRotations = doubleRotations;
+        this.insertRotations = insertRotations;
+        this.deleteRotations = deleteRotations;
+        this.rotations = insertRotations + deleteRotations;
+    }
+}
@@ -0,0 +1,17 @@
+public interface TreeView<N> { // обход дерева только на чтение: холст ходит по узлам сам, без копий и оберток
+    N root(); // null - дерево пустое
+    N left(N node); // null - потомка нет
+    N right(N node);
+    int key(N node);
+    int decoration(N node); // у КЧД - цвет (1 - красный), у AVL - balance factor
+    default int subtreeSize(N node) {return -1;} // узлов в поддереве, если дерево их хранит (orderStatistics); иначе -1
+
+    int getNodeCount();
+    int getHeight();
+    long getModCount(); // растет на каждом изменении
+
+    // путь от корня (0 - влево, 1 - вправо) к поддереву, которое поменяла последняя операция; 0 - все дерево
+    int changedPath(byte[] dirs);
+
+    default Object origin() {return this;} // дерево, к которому относится modCount (у снимка - исходное)
+}
@@ -0,0 +1,261 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+public class Workload { // заранее сгенерированный поток операций: все в int[], в замеряемом цикле нет ни генерации, ни распаковки
+
+    public static final int INSERT = 0;
+    public static final int DELETE = 1;
+    public static final int CONTAINS = 2;
+
+    private static final int CLUSTER = 64; // ключей в пачке CLUSTERED
+    private static final int SPREAD = 1024; // разброс ключей внутри пачки
+
+    public enum Pattern {
+        UNIFORM, // равномерно по [0, keySpace) - как раньше rnd.nextInt(1000000)
+        SEQUENTIAL, // вставки по возрастанию (метки времени), удаления и поиск - среди уже вставленных
+        REVERSE, // вставки по убыванию
+        ZIPF, // по закону Ципфа с параметром skew: немного очень горячих ключей
+        CLUSTERED, // пачки близких ключей вокруг случайных центров
+        SLIDING_WINDOW // вставки по возрастанию, удаления - самых старых, поиск - внутри окна живых ключей
+    }
+
+    public static class OpMix { // доли операций в процентах
+        public static final OpMix INSERT_ONLY = new OpMix(100, 0, 0);
+        public static final OpMix MIXED = new OpMix(40, 30, 30); // прежний смешанный тест
+        public static final OpMix READ_HEAVY = new OpMix(5, 5, 90);
+
+        public final int insertPercent, deletePercent, containsPercent;
+
+        public OpMix(int insertPercent, int deletePercent, int containsPercent) {
+            if (insertPercent < 0 || deletePercent < 0 || containsPercent < 0
+                    || insertPercent + deletePercent + containsPercent != 100) {
+                throw new IllegalArgumentException("доли операций должны быть >= 0 и в сумме давать 100");
+            }
+            this.insertPercent = insertPercent;
+            this.deletePercent = deletePercent;
+            this.containsPercent = containsPercent;
+        }
+    }
+
+    public final String name;
+    public final int[] initial; // ключи, которые вставляются до замера
+    public final int[] ops; // INSERT / DELETE / CONTAINS
+    public final int[] keys; // ключ для ops[i]
+
+    public Workload(String name, int[] initial, int[] ops, int[] keys) {
+        if (ops.length != keys.length) throw new IllegalArgumentException("ops и keys разной длины");
+        this.name = name;
+        this.initial = initial;
+        this.ops = ops;
+        this.keys = keys;
+    }
+
+    public int size() {return ops.length;}
+
+    public static Workload generate(Pattern pattern, int initialCount, int opCount, OpMix mix, long seed) {
+        return generate(pattern, 1.0, 1_000_000, initialCount, opCount, mix, seed);
+    }
+
+    public static Workload generate(Pattern pattern, double skew, int keySpace,
+                                    int initialCount, int opCount, OpMix mix, long seed) { // один seed - один и тот же поток
+        if (keySpace < 1) throw new IllegalArgumentException("keySpace должен быть >= 1: " + keySpace);
+        Random rnd = new Random(seed);
+        KeySource src = source(pattern, skew, keySpace, rnd);
+        int[] initial = new int[initialCount];
+        for (int i = 0; i < initialCount; i++) initial[i] = src.insertKey();
+        int[] ops = new int[opCount];
+        int[] keys = new int[opCount];
+        for (int i = 0; i < opCount; i++) {
+            int p = rnd.nextInt(100);
+            if (p < mix.insertPercent) {
+                ops[i] = INSERT;
+                keys[i] = src.insertKey();
+            } else if (p < mix.insertPercent + mix.deletePercent) {
+                ops[i] = DELETE;
+                keys[i] = src.deleteKey();
+            } else {
+                ops[i] = CONTAINS;
+                keys[i] = src.lookupKey();
+            }
+        }
+        String name = pattern + (pattern == Pattern.ZIPF ? "(" + skew + ")" : "")
+                + " " + mix.insertPercent + "/" + mix.deletePercent + "/" + mix.containsPercent;
+        return new Workload(name, initial, ops, keys);
+    }
+
+    // ---------- источники ключей ----------
+
+    private abstract static class KeySource {
+        abstract int insertKey();
+        int deleteKey() {return lookupKey();}
+        abstract int lookupKey();
+    }
+
+    private static KeySource source(Pattern pattern, double skew, int keySpace, Random rnd) {
+        switch (pattern) {
+            case UNIFORM:
+                return new KeySource() {
+                    int insertKey() {return rnd.nextInt(keySpace);}
+                    int lookupKey() {return rnd.nextInt(keySpace);}
+                };
+            case SEQUENTIAL:
+                return new KeySource() {
+                    int next = 0;
+                    int insertKey() {return next++;}
+                    int lookupKey() {return rnd.nextInt(Math.max(1, next));}
+                };
+            case REVERSE:
+                return new KeySource() {
+                    int next = keySpace - 1;
+                    int insertKey() {return next--;}
+                    int lookupKey() {return keySpace - 1 - rnd.nextInt(Math.max(1, keySpace - 1 - next));}
+                };
+            case ZIPF: {
+                Zipf zipf = new Zipf(keySpace, skew);
+                return new KeySource() {
+                    int insertKey() {return scatter(zipf.sample(rnd), keySpace);}
+                    int lookupKey() {return scatter(zipf.sample(rnd), keySpace);}
+                };
+            }
+            case CLUSTERED:
+                return new KeySource() {
+                    int center, left = 0;
+                    int insertKey() {
+                        if (left == 0) { // новая пачка
+                            center = rnd.nextInt(keySpace);
+                            left = CLUSTER;
+                        }
+                        left--;
+                        return clamp((long) center + rnd.nextInt(SPREAD) - SPREAD / 2, keySpace);
+                    }
+                    int lookupKey() {return rnd.nextInt(keySpace);}
+                };
+            case SLIDING_WINDOW:
+                return new KeySource() {
+                    int oldest = 0, next = 0; // живые ключи - [oldest, next)
+                    int insertKey() {return next++;}
+                    int deleteKey() {return oldest < next ? oldest++ : next;}
+                    int lookupKey() {return oldest + rnd.nextInt(Math.max(1, next - oldest));}
+                };
+            default:
+                throw new IllegalArgumentException("неизвестный шаблон: " + pattern);
+        }
+    }
+
+    private static int scatter(int rank, int keySpace) { // горячие ранги 1, 2, 3... разносим по всему пространству ключей
+        return (int) ((rank * 0x9E3779B97F4A7C15L >>> 1) % keySpace);
+    }
+
+    private static int clamp(long key, int keySpace) {
+        return (int) Math.max(0, Math.min(keySpace - 1, key));
+    }
+
+    private static final class Zipf { // rejection-inversion (Hörmann, Derflinger): O(1) на выборку, без таблицы на keySpace элементов
+        private final int n;
+        private final double exponent;
+        private final double hIntegralX1, hIntegralN, s;
+
+        Zipf(int n, double exponent) {
+            if (exponent <= 0) throw new IllegalArgumentException("skew должен быть > 0: " + exponent);
+            this.n = n;
+            this.exponent = exponent;
+            hIntegralX1 = hIntegral(1.5) - 1.0;
+            hIntegralN = hIntegral(n + 0.5);
+            s = 2.0 - hIntegralInverse(hIntegral(2.5) - h(2));
+        }
+
+        int sample(Random rnd) { // ранг от 1 до n
+            while (true) {
+                double u = hIntegralN + rnd.nextDouble() * (hIntegralX1 - hIntegralN);
+                double x = hIntegralInverse(u);
+                int k = (int) (x + 0.5);
+                if (k < 1) k = 1;
+                else if (k > n) k = n;
+                if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) return k;
+            }
+        }
+
+        private double h(double x) {
+            return Math.exp(-exponent * Math.log(x));
+        }
+
+        private double hIntegral(double x) {
+            double logX = Math.log(x);
+            return helper2((1.0 - exponent) * logX) * logX;
+        }
+
+        private double hIntegralInverse(double x) {
+            double t = x * (1.0 - exponent);
+            if (t < -1.0) t = -1.0; // защита от ошибок округления
+            return Math.exp(helper1(t) * x);
+        }
+
+        private static double helper1(double x) { // log(1+x)/x без потери точности около 0
+            return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+        }
+
+        private static double helper2(double x) { // (exp(x)-1)/x
+            return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x * (1.0 / 3.0) * (1 + 0.25 * x));
+        }
+    }
+
+    // ---------- трассы ----------
+
+    // текстовый формат, строка на операцию: "i 42" - вставка, "d 42" - удаление, "c 42" - поиск;
+    // "p 42" - ключ предварительной загрузки (до замера), пустые строки и строки с # пропускаются
+    public static Workload fromTrace(Path file) throws IOException {
+        int[] initial = new int[1024], ops = new int[1024], keys = new int[1024];
+        int ni = 0, n = 0, line = 0;
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (String s; (s = in.readLine()) != null; ) {
+                line++;
+                s = s.trim();
+                if (s.isEmpty() || s.startsWith("#")) continue;
+                if (s.length() < 3 || s.charAt(1) != ' ') throw new IOException(file + ":" + line + ": ожидается '<i|d|c|p> ключ'");
+                int key;
+                try {
+                    key = Integer.parseInt(s.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException(file + ":" + line + ": не число: " + s.substring(2).trim());
+                }
+                char op = s.charAt(0);
+                if (op == 'p') {
+                    if (ni == initial.length) initial = Arrays.copyOf(initial, ni * 2);
+                    initial[ni++] = key;
+                    continue;
+                }
+                int code = op == 'i' ? INSERT : op == 'd' ? DELETE : op == 'c' ? CONTAINS : -1;
+                if (code < 0) throw new IOException(file + ":" + line + ": неизвестная операция '" + op + "'");
+                if (n == ops.length) {
+                    ops = Arrays.copyOf(ops, n * 2);
+                    keys = Arrays.copyOf(keys, n * 2);
+                }
+                ops[n] = code;
+                keys[n++] = key;
+            }
+        }
+        return new Workload("trace " + file.getFileName(), Arrays.copyOf(initial, ni),
+                Arrays.copyOf(ops, n), Arrays.copyOf(keys, n));
+    }
+
+    public void saveTrace(Path file) throws IOException { // записывает поток в формате fromTrace - для повторов на другой машине
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("# " + name);
+            out.newLine();
+            for (int k : initial) {
+                out.write("p " + k);
+                out.newLine();
+            }
+            for (int i = 0; i < ops.length; i++) {
+                out.write((ops[i] == INSERT ? "i " : ops[i] == DELETE ? "d " : "c ") + keys[i]);
+                out.newLine();
+            }
+        }
+    }
+}